@@ -0,0 +1,317 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import com.aoapps.html.servlet.DocumentEE;
+import com.aoapps.html.servlet.FlowContent;
+import com.aoapps.lang.validation.ValidationException;
+import com.aoapps.net.DomainName;
+import com.aoapps.net.Path;
+import com.semanticcms.core.model.BookRef;
+import com.semanticcms.core.model.Link;
+import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.pages.CaptureLevel;
+import com.semanticcms.core.pages.local.CurrentPage;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.jsp.SkipPageException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks writing links with {@link LinkRenderer}, along with the href building performed for every link written.
+ * Links are written through the full {@link LinkRenderer} path against a stub servlet environment, both with
+ * caching disabled and from the link cache.
+ * <p>
+ * Run with {@code java -jar target/benchmarks.jar -prof gc} to include the bytes allocated per link
+ * ({@code gc.alloc.rate.norm}) along with the operations per second.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LinkRendererBenchmark {
+
+	/**
+	 * A view with only a name, enough for building hrefs and writing links.
+	 */
+	private static class BenchmarkView extends View {
+
+		private final String name;
+
+		private BenchmarkView(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Group getGroup() {
+			return Group.FIXED;
+		}
+
+		@Override
+		public String getDisplay() {
+			return name;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String getDescription(Page page) {
+			return null;
+		}
+
+		@Override
+		public String getKeywords(Page page) {
+			return null;
+		}
+
+		@Override
+		public boolean getAllowRobots(ServletContext servletContext, HttpServletRequest request, HttpServletResponse response, Page page) {
+			return true;
+		}
+
+		@Override
+		public <__ extends FlowContent<__>> void doView(ServletContext servletContext, HttpServletRequest request, HttpServletResponse response, __ flow, Page page) throws IOException {
+			flow.p__(page.getTitle());
+		}
+	}
+
+	/**
+	 * Creates a stub implementation of a servlet interface, backed by the given attributes and init parameters.
+	 * Methods not needed for writing links return default values.
+	 */
+	private static <T> T stub(Class<T> iface, Map<String, Object> attributes, Map<String, String> initParams) {
+		return iface.cast(Proxy.newProxyInstance(
+			iface.getClassLoader(),
+			new Class<?>[] {iface},
+			(proxy, method, args) -> {
+				switch(method.getName()) {
+					case "getAttribute" :
+						return attributes.get((String)args[0]);
+					case "setAttribute" :
+						if(args[1] == null) attributes.remove((String)args[0]);
+						else attributes.put((String)args[0], args[1]);
+						return null;
+					case "removeAttribute" :
+						attributes.remove((String)args[0]);
+						return null;
+					case "getAttributeNames" :
+						return Collections.enumeration(attributes.keySet());
+					case "getInitParameter" :
+						return initParams.get((String)args[0]);
+					case "getInitParameterNames" :
+						return Collections.enumeration(initParams.keySet());
+					case "getContextPath" :
+						return "";
+					case "encodeURL" :
+					case "encodeRedirectURL" :
+						return args[0];
+					case "getCharacterEncoding" :
+						return "UTF-8";
+					case "getContentType" :
+						return "application/xhtml+xml; charset=UTF-8";
+					case "getMethod" :
+						return "GET";
+					case "getScheme" :
+						return "https";
+					case "getServerName" :
+						return "semanticcms.com";
+					case "getServerPort" :
+						return 443;
+					case "getRequestURI" :
+						return "/core/renderer/html/changelog";
+					case "getServletPath" :
+						return "/core/renderer/html/changelog";
+					case "getDispatcherType" :
+						return DispatcherType.REQUEST;
+					case "hashCode" :
+						return System.identityHashCode(proxy);
+					case "equals" :
+						return proxy == args[0];
+					case "toString" :
+						return iface.getSimpleName() + " stub";
+					default :
+						Class<?> returnType = method.getReturnType();
+						if(returnType == boolean.class) return false;
+						if(returnType == int.class) return 0;
+						if(returnType == long.class) return 0L;
+						return null;
+				}
+			}
+		));
+	}
+
+	/**
+	 * One stub request to one {@link HtmlRenderer}, rendering the current page.
+	 */
+	private static class StubEnvironment {
+
+		private final ServletContext servletContext;
+		private final HttpServletRequest request;
+		private final HttpServletResponse response;
+		private final DocumentEE document;
+
+		private StubEnvironment(long cacheMaxAgeSeconds, View defaultView, Page currentPage) {
+			Map<String, String> initParams = new HashMap<>();
+			initParams.put(HtmlRenderer.CACHE_MAX_AGE_INIT_PARAM, Long.toString(cacheMaxAgeSeconds));
+			servletContext = stub(ServletContext.class, new ConcurrentHashMap<>(), initParams);
+			request = stub(HttpServletRequest.class, new HashMap<>(), Collections.emptyMap());
+			response = stub(HttpServletResponse.class, new HashMap<>(), Collections.emptyMap());
+			HtmlRenderer.getInstance(servletContext).addView(defaultView);
+			CurrentPage.setCurrentPage(request, currentPage);
+			document = new DocumentEE(servletContext, request, response, Writer.nullWriter());
+		}
+
+		private void writeLink(PageRef pageRef) throws ServletException, IOException, SkipPageException {
+			LinkRenderer.<RuntimeException>writeLinkImpl(
+				servletContext,
+				request,
+				response,
+				document,
+				pageRef,
+				null,
+				false,
+				null,
+				null,
+				false,
+				null,
+				false,
+				false,
+				null,
+				null,
+				CaptureLevel.BODY
+			);
+		}
+	}
+
+	private PageRef pageRef;
+	private PageRef otherPageRef;
+	private View defaultView;
+	private View otherView;
+	private StubEnvironment uncached;
+	private StubEnvironment cached;
+
+	@Setup
+	public void setup() throws ValidationException {
+		pageRef = new PageRef(
+			new BookRef(
+				DomainName.valueOf("semanticcms.com"),
+				Path.valueOf("/core/renderer/html")
+			),
+			Path.valueOf("/changelog")
+		);
+		otherPageRef = new PageRef(pageRef.getBookRef(), Path.valueOf("/index"));
+		defaultView = new BenchmarkView(Link.DEFAULT_VIEW_NAME);
+		otherView = new BenchmarkView("what-links-here");
+		Page currentPage = new Page();
+		currentPage.setPageRef(pageRef);
+		currentPage.setTitle("Changelog");
+		uncached = new StubEnvironment(0, defaultView, currentPage);
+		cached = new StubEnvironment(3600, defaultView, currentPage);
+		// Populate the link cache, since there is no controller to capture the target page
+		HtmlRenderer htmlRenderer = HtmlRenderer.getInstance(cached.servletContext);
+		htmlRenderer.linkCache.put(
+			new LinkRenderer.CacheKey(otherPageRef, null, false, null, Link.DEFAULT_VIEW_NAME, false, false),
+			new LinkRenderer.Resolved(LinkRenderer.getPageHref(otherPageRef, defaultView, null), "SemanticCMS Core Renderer HTML", null, false),
+			htmlRenderer.getCacheMaxAge(cached.request),
+			Collections.singleton(otherPageRef)
+		);
+	}
+
+	/**
+	 * Writes a link to the current page with caching disabled, which resolves the link every time.
+	 */
+	@Benchmark
+	public void writeLinkToCurrentPage() throws ServletException, IOException, SkipPageException {
+		uncached.writeLink(null);
+	}
+
+	/**
+	 * Writes a link to another page from the link cache.
+	 */
+	@Benchmark
+	public void writeCachedLinkToOtherPage() throws ServletException, IOException, SkipPageException {
+		cached.writeLink(otherPageRef);
+	}
+
+	@Benchmark
+	public String pageInDefaultView() {
+		return LinkRenderer.getPageHref(pageRef, defaultView, null);
+	}
+
+	@Benchmark
+	public String elementInDefaultView() {
+		return LinkRenderer.getPageHref(pageRef, defaultView, "release-notes");
+	}
+
+	@Benchmark
+	public String pageInOtherView() {
+		return LinkRenderer.getPageHref(pageRef, otherView, null);
+	}
+
+	@Benchmark
+	public String anchorOnSamePage() {
+		return LinkRenderer.getAnchorHref("release-notes");
+	}
+
+	@Benchmark
+	public String indexedPage() {
+		return LinkRenderer.getIndexedHref(1234, null);
+	}
+
+	@Benchmark
+	public String elementInIndexedPage() {
+		return LinkRenderer.getIndexedHref(1234, "release-notes");
+	}
+
+	@Benchmark
+	public String brokenPath() {
+		return LinkRenderer.getBrokenPath(pageRef, "release-notes");
+	}
+}
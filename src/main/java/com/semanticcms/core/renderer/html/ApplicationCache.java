@@ -0,0 +1,139 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import com.aoapps.collections.AoCollections;
+import com.semanticcms.core.model.PageRef;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An application-scope cache of values derived from captured pages, shared across requests.
+ * <p>
+ * Pages are re-captured on each request, so there is no notification when a page changes.
+ * Entries are instead limited to the {@linkplain HtmlRenderer#getCacheMaxAge(javax.servlet.http.HttpServletRequest) maximum age}
+ * in effect for the current request, and are discarded early when any of the pages they
+ * were derived from are {@linkplain HtmlRenderer#invalidate(com.semanticcms.core.model.PageRef) invalidated}.
+ * </p>
+ *
+ * @see  HtmlRenderer#newCache()
+ */
+final class ApplicationCache<K, V> {
+
+	/**
+	 * Once the cache grows beyond this size, expired entries are removed on the next put.
+	 */
+	private static final int PURGE_SIZE = 10000;
+
+	private static class Entry<V> {
+
+		private final V value;
+		private final long created;
+
+		/**
+		 * The pages this value was derived from or {@code null} when derived from the page hierarchy as a whole.
+		 */
+		private final Set<PageRef> dependencies;
+
+		private Entry(V value, long created, Set<PageRef> dependencies) {
+			this.value = value;
+			this.created = created;
+			this.dependencies = dependencies;
+		}
+
+		private boolean isExpired(long now, long maxAge) {
+			long age = now - created;
+			// Handle system time reset
+			return age < 0 || age >= maxAge;
+		}
+	}
+
+	private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+	ApplicationCache() {
+	}
+
+	/**
+	 * Gets a value from the cache.
+	 *
+	 * @param  maxAge  the maximum age, in milliseconds.  No value is returned when {@code <= 0}.
+	 *
+	 * @return  the value or {@code null} when not cached or expired
+	 */
+	V get(K key, long maxAge) {
+		if(maxAge <= 0) return null;
+		Entry<V> entry = entries.get(key);
+		if(entry == null) return null;
+		if(entry.isExpired(System.currentTimeMillis(), maxAge)) {
+			entries.remove(key, entry);
+			return null;
+		}
+		return entry.value;
+	}
+
+	/**
+	 * Adds a value to the cache.
+	 *
+	 * @param  maxAge  the maximum age, in milliseconds.  No value is added when {@code <= 0}.
+	 * @param  dependencies  the pages the value was derived from, or {@code null} when the value may be affected by any
+	 *                       page, such as when inherited through the page hierarchy.
+	 */
+	void put(K key, V value, long maxAge, Collection<? extends PageRef> dependencies) {
+		if(maxAge <= 0) return;
+		long now = System.currentTimeMillis();
+		if(entries.size() >= PURGE_SIZE) purge(now, maxAge);
+		entries.put(
+			key,
+			new Entry<>(
+				value,
+				now,
+				dependencies == null ? null : AoCollections.unmodifiableCopySet(dependencies)
+			)
+		);
+	}
+
+	/**
+	 * Removes all entries derived from the given page.
+	 */
+	void invalidate(PageRef pageRef) {
+		Iterator<Entry<V>> iter = entries.values().iterator();
+		while(iter.hasNext()) {
+			Set<PageRef> dependencies = iter.next().dependencies;
+			if(dependencies == null || dependencies.contains(pageRef)) iter.remove();
+		}
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	void clear() {
+		entries.clear();
+	}
+
+	private void purge(long now, long maxAge) {
+		entries.values().removeIf(entry -> entry.isExpired(now, maxAge));
+	}
+}
@@ -0,0 +1,611 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import com.aoapps.servlet.subrequest.HttpServletSubRequest;
+import com.aoapps.servlet.subrequest.UnmodifiableCopyHttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.servlet.jsp.SkipPageException;
+
+/**
+ * Renders pages off the container threads, using Servlet 3.1 asynchronous processing.
+ * <p>
+ * The page is rendered on a dedicated executor into a buffer, then written to the client
+ * through a non-blocking {@link WriteListener}.  Container threads are released both while the page
+ * renders and while slow clients receive it.
+ * </p>
+ * <p>
+ * The container thread continues to unwind through the servlet, pages, and filters once rendering is started,
+ * restoring request attributes as it goes.  The page is therefore rendered in a subrequest of a thread-safe copy of
+ * the request, as done by the controller for concurrent subrequests, and into a response that records the status,
+ * headers, and content until the page is complete.  Nothing is applied to the real response until then.
+ * </p>
+ *
+ * @see  HtmlRenderer#ASYNC_RENDERING_INIT_PARAM
+ * @see  HtmlRenderer#ASYNC_RENDERING_TIMEOUT_INIT_PARAM
+ */
+final class AsyncRendering {
+
+	/**
+	 * Renders a page.
+	 */
+	@FunctionalInterface
+	static interface RenderTask {
+		void render(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException, SkipPageException;
+	}
+
+	/**
+	 * The request attribute set on the subrequest a page is rendered in, so it is not rendered asynchronously again.
+	 */
+	private static final String RENDERING_REQUEST_ATTRIBUTE = AsyncRendering.class.getName() + ".rendering";
+
+	/**
+	 * The size of each non-blocking write.
+	 */
+	private static final int WRITE_SIZE = 8192;
+
+	/**
+	 * Creates the executor for rendering, using virtual threads when available.
+	 *
+	 * @param  threadNamePrefix  the prefix of thread names when platform threads are used
+	 */
+	static ExecutorService newExecutor(String threadNamePrefix) {
+		try {
+			// Java 21+
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch(ReflectiveOperationException e) {
+			// Rendering spends much of its time waiting on page captures, so allow more threads than processors
+			AtomicInteger threadNum = new AtomicInteger();
+			ThreadFactory threadFactory = runnable -> {
+				Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadNum.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			};
+			return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 4, threadFactory);
+		}
+	}
+
+	/**
+	 * Checks if a request may be rendered asynchronously.  Only top-level requests are rendered asynchronously,
+	 * and never while exporting.
+	 */
+	static boolean isSupported(HttpServletRequest request) {
+		return
+			request.getDispatcherType() == DispatcherType.REQUEST
+			&& request.isAsyncSupported()
+			&& !request.isAsyncStarted()
+			&& request.getAttribute(RENDERING_REQUEST_ATTRIBUTE) == null
+			&& !Headers.isExporting(request);
+	}
+
+	/**
+	 * Starts asynchronous processing and renders the page on the given executor.
+	 *
+	 * @param  timeout  the maximum time, in milliseconds, to render and send the page
+	 */
+	static void render(
+		ServletContext servletContext,
+		ExecutorService executor,
+		long timeout,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		RenderTask task
+	) {
+		assert isSupported(request);
+		// Copied before returning, while the request attributes are still those of the page
+		HttpServletRequest threadSafeReq = new UnmodifiableCopyHttpServletRequest(request);
+		BufferedResponse buffered = new BufferedResponse(response);
+		AsyncContext asyncContext = request.startAsync(request, response);
+		asyncContext.setTimeout(timeout);
+		// Set once the outcome is decided, by either completing the render or timing out
+		AtomicBoolean decided = new AtomicBoolean();
+		AtomicReference<Future<?>> rendering = new AtomicReference<>();
+		asyncContext.addListener(new AsyncListener() {
+			@Override
+			public void onTimeout(AsyncEvent event) {
+				Future<?> future = rendering.get();
+				if(future != null) future.cancel(true);
+				if(decided.compareAndSet(false, true)) {
+					servletContext.log("Asynchronous rendering timed out: " + request.getRequestURI());
+					sendError(asyncContext, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+				} else {
+					// Abandon writing to a slow client
+					complete(asyncContext);
+				}
+			}
+
+			@Override
+			public void onError(AsyncEvent event) {
+				Future<?> future = rendering.get();
+				if(future != null) future.cancel(true);
+				decided.set(true);
+			}
+
+			@Override
+			public void onComplete(AsyncEvent event) {
+				// Nothing to clean-up
+			}
+
+			@Override
+			public void onStartAsync(AsyncEvent event) {
+				// Not restarted
+			}
+		});
+		try {
+			rendering.set(executor.submit(() -> {
+				HttpServletRequest subrequest = new HttpServletSubRequest(threadSafeReq);
+				subrequest.setAttribute(RENDERING_REQUEST_ATTRIBUTE, Boolean.TRUE);
+				try {
+					try {
+						task.render(subrequest, buffered);
+					} catch(SkipPageException e) {
+						// Send what was rendered
+					}
+				} catch(ServletException | IOException | RuntimeException | Error t) {
+					servletContext.log("Asynchronous rendering failed: " + threadSafeReq.getRequestURI(), t);
+					buffered.reset();
+					buffered.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+				}
+				if(decided.compareAndSet(false, true)) {
+					try {
+						write(servletContext, asyncContext, buffered);
+					} catch(IOException | RuntimeException e) {
+						servletContext.log("Asynchronous write failed: " + threadSafeReq.getRequestURI(), e);
+						complete(asyncContext);
+					}
+				}
+			}));
+		} catch(RejectedExecutionException e) {
+			// Executor shut down, such as while the application is stopping
+			servletContext.log("Asynchronous rendering rejected: " + request.getRequestURI(), e);
+			if(decided.compareAndSet(false, true)) sendError(asyncContext, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		}
+	}
+
+	/**
+	 * Completes asynchronous processing, when not already completed.
+	 */
+	private static void complete(AsyncContext asyncContext) {
+		try {
+			asyncContext.complete();
+		} catch(IllegalStateException e) {
+			// Already completed
+		}
+	}
+
+	/**
+	 * Sends an error on the real response, when still possible, and completes asynchronous processing.
+	 * Only used when the page has not been rendered; errors while rendering go through the {@link BufferedResponse}.
+	 */
+	private static void sendError(AsyncContext asyncContext, int status) {
+		try {
+			HttpServletResponse response = (HttpServletResponse)asyncContext.getResponse();
+			if(!response.isCommitted()) {
+				response.reset();
+				response.sendError(status);
+			}
+		} catch(IOException | RuntimeException e) {
+			// Client may have disconnected
+		} finally {
+			complete(asyncContext);
+		}
+	}
+
+	/**
+	 * Applies the rendered page to the real response, then writes its content without blocking when the output
+	 * stream is available.
+	 * <p>
+	 * The page is written here instead of through {@link AsyncContext#dispatch()}, since a dispatched
+	 * servlet would write with blocking I/O on a container thread.
+	 * </p>
+	 */
+	private static void write(
+		ServletContext servletContext,
+		AsyncContext asyncContext,
+		BufferedResponse buffered
+	) throws IOException {
+		HttpServletResponse response = (HttpServletResponse)asyncContext.getResponse();
+		if(!buffered.applyTo(response)) {
+			complete(asyncContext);
+			return;
+		}
+		RenderBuffer buffer = buffered.getBuffer();
+		byte[] bytes = buffer.getBytes();
+		int size = buffer.size();
+		if(size == 0) {
+			complete(asyncContext);
+			return;
+		}
+		ServletOutputStream out;
+		try {
+			out = response.getOutputStream();
+		} catch(IllegalStateException e) {
+			// The writer is already in use, write blocking from this rendering thread
+			response.getWriter().write(new String(bytes, 0, size, buffer.getCharset()));
+			complete(asyncContext);
+			return;
+		}
+		response.setContentLength(size);
+		out.setWriteListener(new WriteListener() {
+			private int pos;
+
+			@Override
+			public void onWritePossible() throws IOException {
+				while(out.isReady()) {
+					if(pos == size) {
+						complete(asyncContext);
+						return;
+					}
+					int len = Math.min(WRITE_SIZE, size - pos);
+					out.write(bytes, pos, len);
+					pos += len;
+				}
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				// Typically the client disconnected
+				servletContext.log("Asynchronous write failed", t);
+				complete(asyncContext);
+			}
+		});
+	}
+
+	/**
+	 * The encoded page, with access to its bytes without copying.
+	 */
+	private static class RenderBuffer extends ByteArrayOutputStream {
+
+		private Charset charset;
+
+		private RenderBuffer() {
+			super(WRITE_SIZE);
+		}
+
+		private byte[] getBytes() {
+			return buf;
+		}
+
+		private Charset getCharset() {
+			return charset;
+		}
+	}
+
+	/**
+	 * Buffers the page as it is rendered, so that it may be written without blocking.
+	 * The page is encoded directly into the buffer, in the character encoding of the response
+	 * when {@link #getWriter()} is first called.
+	 * <p>
+	 * The status, headers, and cookies are recorded here and only
+	 * {@linkplain #applyTo(javax.servlet.http.HttpServletResponse) applied} to the real response once the page is
+	 * complete.  Errors and redirects are likewise sent once complete.
+	 * </p>
+	 */
+	private static class BufferedResponse extends HttpServletResponseWrapper {
+
+		private final RenderBuffer buffer = new RenderBuffer();
+		private PrintWriter writer;
+
+		private int status = SC_OK;
+		private boolean error;
+		private String errorMessage;
+		private String redirect;
+		private String contentType;
+		private String characterEncoding;
+		private Locale locale;
+		private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		private final List<Cookie> cookies = new ArrayList<>();
+
+		/**
+		 * Created on the container thread, before rendering starts.
+		 */
+		private BufferedResponse(HttpServletResponse response) {
+			super(response);
+			characterEncoding = response.getCharacterEncoding();
+			locale = response.getLocale();
+		}
+
+		private RenderBuffer getBuffer() {
+			if(writer != null) writer.flush();
+			return buffer;
+		}
+
+		/**
+		 * Applies the recorded status, headers, and cookies to the real response, or sends the recorded error or
+		 * redirect.
+		 *
+		 * @return  {@code true} when the buffered content is to be written
+		 */
+		private boolean applyTo(HttpServletResponse response) throws IOException {
+			for(Cookie cookie : cookies) response.addCookie(cookie);
+			for(Map.Entry<String, List<String>> entry : headers.entrySet()) {
+				String name = entry.getKey();
+				boolean first = true;
+				for(String value : entry.getValue()) {
+					if(first) {
+						response.setHeader(name, value);
+						first = false;
+					} else {
+						response.addHeader(name, value);
+					}
+				}
+			}
+			if(locale != null) response.setLocale(locale);
+			if(error) {
+				if(errorMessage == null) response.sendError(status);
+				else response.sendError(status, errorMessage);
+				return false;
+			}
+			if(redirect != null) {
+				response.sendRedirect(redirect);
+				return false;
+			}
+			response.setStatus(status);
+			if(contentType != null) response.setContentType(contentType);
+			if(characterEncoding != null) response.setCharacterEncoding(characterEncoding);
+			return true;
+		}
+
+		@Override
+		public PrintWriter getWriter() {
+			if(writer == null) {
+				buffer.charset = Charset.forName(characterEncoding == null ? "ISO-8859-1" : characterEncoding);
+				writer = new PrintWriter(new OutputStreamWriter(buffer, buffer.charset));
+			}
+			return writer;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			throw new IllegalStateException("Asynchronous rendering only supports getWriter()");
+		}
+
+		@Override
+		public int getStatus() {
+			return status;
+		}
+
+		@Override
+		public void setStatus(int sc) {
+			status = sc;
+		}
+
+		@Override
+		@Deprecated
+		public void setStatus(int sc, String sm) {
+			status = sc;
+		}
+
+		@Override
+		public void sendError(int sc) {
+			sendError(sc, null);
+		}
+
+		@Override
+		public void sendError(int sc, String msg) {
+			resetBuffer();
+			status = sc;
+			error = true;
+			errorMessage = msg;
+		}
+
+		@Override
+		public void sendRedirect(String location) {
+			resetBuffer();
+			status = SC_FOUND;
+			redirect = location;
+		}
+
+		@Override
+		public boolean containsHeader(String name) {
+			return headers.containsKey(name);
+		}
+
+		@Override
+		public String getHeader(String name) {
+			List<String> values = headers.get(name);
+			return values == null ? null : values.get(0);
+		}
+
+		@Override
+		public Collection<String> getHeaders(String name) {
+			List<String> values = headers.get(name);
+			return values == null ? Collections.emptyList() : Collections.unmodifiableList(values);
+		}
+
+		@Override
+		public Collection<String> getHeaderNames() {
+			return Collections.unmodifiableSet(headers.keySet());
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			if(value == null) {
+				headers.remove(name);
+			} else {
+				List<String> values = new ArrayList<>(1);
+				values.add(value);
+				headers.put(name, values);
+			}
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			if(value != null) headers.computeIfAbsent(name, n -> new ArrayList<>(1)).add(value);
+		}
+
+		private static String formatDate(long date) {
+			SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+			format.setTimeZone(TimeZone.getTimeZone("GMT"));
+			return format.format(new Date(date));
+		}
+
+		@Override
+		public void setDateHeader(String name, long date) {
+			setHeader(name, formatDate(date));
+		}
+
+		@Override
+		public void addDateHeader(String name, long date) {
+			addHeader(name, formatDate(date));
+		}
+
+		@Override
+		public void setIntHeader(String name, int value) {
+			setHeader(name, Integer.toString(value));
+		}
+
+		@Override
+		public void addIntHeader(String name, int value) {
+			addHeader(name, Integer.toString(value));
+		}
+
+		@Override
+		public void addCookie(Cookie cookie) {
+			cookies.add(cookie);
+		}
+
+		@Override
+		public void setContentLength(int len) {
+			// Determined from content
+		}
+
+		@Override
+		public void setContentLengthLong(long len) {
+			// Determined from content
+		}
+
+		@Override
+		public String getContentType() {
+			return contentType;
+		}
+
+		@Override
+		public void setContentType(String type) {
+			contentType = type;
+			if(type != null && writer == null) {
+				int pos = type.toLowerCase(Locale.ROOT).indexOf("charset=");
+				if(pos != -1) {
+					String charset = type.substring(pos + "charset=".length());
+					int end = charset.indexOf(';');
+					if(end != -1) charset = charset.substring(0, end);
+					characterEncoding = charset.trim();
+				}
+			}
+		}
+
+		@Override
+		public String getCharacterEncoding() {
+			return characterEncoding;
+		}
+
+		@Override
+		public void setCharacterEncoding(String charset) {
+			if(charset != null && writer == null) characterEncoding = charset;
+		}
+
+		@Override
+		public Locale getLocale() {
+			return locale;
+		}
+
+		@Override
+		public void setLocale(Locale loc) {
+			locale = loc;
+		}
+
+		@Override
+		public void setBufferSize(int size) {
+			// Fully buffered
+		}
+
+		@Override
+		public void flushBuffer() {
+			// Buffered until rendered
+		}
+
+		@Override
+		public boolean isCommitted() {
+			// Nothing is sent until rendered
+			return false;
+		}
+
+		@Override
+		public void resetBuffer() {
+			if(writer != null) writer.flush();
+			buffer.reset();
+		}
+
+		@Override
+		public void reset() {
+			resetBuffer();
+			status = SC_OK;
+			error = false;
+			errorMessage = null;
+			redirect = null;
+			contentType = null;
+			headers.clear();
+			cookies.clear();
+		}
+	}
+
+	/**
+	 * Make no instances.
+	 */
+	private AsyncRendering() {
+	}
+}
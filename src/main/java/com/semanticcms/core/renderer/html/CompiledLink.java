@@ -0,0 +1,250 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import com.aoapps.html.any.AnyUnion_Palpable_Phrasing;
+import static com.aoapps.lang.Strings.nullIfEmpty;
+import com.aoapps.lang.validation.ValidationException;
+import com.aoapps.net.DomainName;
+import com.aoapps.net.Path;
+import com.aoapps.net.URIParameters;
+import static com.aoapps.taglib.AttributeUtils.resolveValue;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.pages.CaptureLevel;
+import com.semanticcms.core.pages.local.CurrentCaptureLevel;
+import java.io.IOException;
+import javax.el.ELContext;
+import javax.el.ValueExpression;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.jsp.SkipPageException;
+
+/**
+ * A link with its expressions compiled once, such as once per tag instance.
+ * <p>
+ * The expressions of a link are almost always literals.  Literal expressions are only
+ * evaluated once, with the parsed {@link DomainName} and {@link Path} retained.  When the
+ * domain, book, and page are all literal, the resolved {@link PageRef} is also retained.
+ * Only the dynamic expressions are evaluated per request.
+ * </p>
+ *
+ * @see  LinkRenderer#writeLinkImpl(javax.servlet.ServletContext, javax.el.ELContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.aoapps.html.any.AnyUnion_Palpable_Phrasing, javax.el.ValueExpression, javax.el.ValueExpression, javax.el.ValueExpression, javax.el.ValueExpression, boolean, javax.el.ValueExpression, javax.el.ValueExpression, boolean, com.aoapps.net.URIParameters, boolean, boolean, javax.el.ValueExpression, com.semanticcms.core.renderer.html.LinkRenderer.LinkRendererBody)
+ */
+public final class CompiledLink {
+
+	/**
+	 * An expression that is only evaluated once when literal.
+	 * Literal values are immutable, so concurrent first evaluations are harmless.
+	 */
+	private static final class CompiledExpression<T> {
+
+		private final ValueExpression expression;
+		private final Class<T> type;
+		private final boolean literal;
+
+		private volatile boolean evaluated;
+		private volatile T value;
+
+		private CompiledExpression(ValueExpression expression, Class<T> type) {
+			this.expression = expression;
+			this.type = type;
+			this.literal = expression == null || expression.isLiteralText();
+		}
+
+		private T getValue(ELContext elContext) {
+			if(!literal) return resolveValue(expression, type, elContext);
+			if(!evaluated) {
+				value = resolveValue(expression, type, elContext);
+				evaluated = true;
+			}
+			return value;
+		}
+	}
+
+	private final CompiledExpression<String> domain;
+	private final CompiledExpression<String> book;
+	private final CompiledExpression<String> page;
+	private final CompiledExpression<String> element;
+	private final boolean allowGeneratedElement;
+	private final CompiledExpression<String> anchor;
+	private final CompiledExpression<String> viewName;
+	private final boolean small;
+	private final URIParameters params;
+	private final boolean absolute;
+	private final boolean canonical;
+	private final CompiledExpression<Object> clazz;
+
+	/**
+	 * Is the target page fully determined by literal expressions?
+	 */
+	private final boolean literalPageRef;
+
+	/**
+	 * The parsed literal domain, set once evaluated.
+	 */
+	private volatile DomainName domainObj;
+
+	/**
+	 * The parsed literal book, set once evaluated.
+	 */
+	private volatile Path bookPath;
+
+	/**
+	 * The resolved target of a {@linkplain #literalPageRef literal page}, set once resolved.
+	 */
+	private volatile PageRef pageRef;
+
+	/**
+	 * @param domain    ValueExpression that returns String, evaluated at {@link CaptureLevel#META} or higher
+	 * @param book      ValueExpression that returns String, evaluated at {@link CaptureLevel#META} or higher
+	 * @param page      ValueExpression that returns String, evaluated at {@link CaptureLevel#META} or higher
+	 * @param element   ValueExpression that returns String, evaluated at {@link CaptureLevel#BODY} only.
+	 *                  Conflicts with {@code anchor}.
+	 * @param anchor    ValueExpression that returns String, evaluated at {@link CaptureLevel#BODY} only.
+	 *                  Conflicts with {@code element}.
+	 * @param viewName  ValueExpression that returns String, evaluated at {@link CaptureLevel#BODY} only
+	 * @param clazz     ValueExpression that returns Object, evaluated at {@link CaptureLevel#BODY} only
+	 */
+	public CompiledLink(
+		ValueExpression domain,
+		ValueExpression book,
+		ValueExpression page,
+		ValueExpression element,
+		boolean allowGeneratedElement,
+		ValueExpression anchor,
+		ValueExpression viewName,
+		boolean small,
+		URIParameters params,
+		boolean absolute,
+		boolean canonical,
+		ValueExpression clazz
+	) {
+		this.domain = new CompiledExpression<>(domain, String.class);
+		this.book = new CompiledExpression<>(book, String.class);
+		this.page = new CompiledExpression<>(page, String.class);
+		this.element = new CompiledExpression<>(element, String.class);
+		this.allowGeneratedElement = allowGeneratedElement;
+		this.anchor = new CompiledExpression<>(anchor, String.class);
+		this.viewName = new CompiledExpression<>(viewName, String.class);
+		this.small = small;
+		this.params = params;
+		this.absolute = absolute;
+		this.canonical = canonical;
+		this.clazz = new CompiledExpression<>(clazz, Object.class);
+		// Only a fully-qualified page is independent of the current page
+		this.literalPageRef =
+			domain != null && this.domain.literal
+			&& book != null && this.book.literal
+			&& page != null && this.page.literal;
+	}
+
+	private DomainName getDomain(ELContext elContext) throws ValidationException {
+		if(domain.literal) {
+			DomainName d = domainObj;
+			if(d == null) domainObj = d = DomainName.valueOf(nullIfEmpty(domain.getValue(elContext)));
+			return d;
+		}
+		return DomainName.valueOf(nullIfEmpty(domain.getValue(elContext)));
+	}
+
+	private Path getBook(ELContext elContext) throws ValidationException {
+		if(book.literal) {
+			Path b = bookPath;
+			if(b == null) bookPath = b = Path.valueOf(nullIfEmpty(book.getValue(elContext)));
+			return b;
+		}
+		return Path.valueOf(nullIfEmpty(book.getValue(elContext)));
+	}
+
+	private PageRef getPageRef(ServletContext servletContext, ELContext elContext, HttpServletRequest request) throws ServletException, IOException {
+		PageRef p = literalPageRef ? pageRef : null;
+		if(p == null) {
+			DomainName domainObj_;
+			Path bookPath_;
+			try {
+				domainObj_ = getDomain(elContext);
+				bookPath_ = getBook(elContext);
+			} catch(ValidationException e) {
+				throw new ServletException(e);
+			}
+			p = LinkRenderer.getPageRef(servletContext, request, domainObj_, bookPath_, page.getValue(elContext));
+			if(literalPageRef) pageRef = p;
+		}
+		return p;
+	}
+
+	/**
+	 * @param  <Ex>  An arbitrary exception type that may be thrown
+	 *
+	 * @see  LinkRenderer#writeLinkImpl(javax.servlet.ServletContext, javax.el.ELContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.aoapps.html.any.AnyUnion_Palpable_Phrasing, javax.el.ValueExpression, javax.el.ValueExpression, javax.el.ValueExpression, javax.el.ValueExpression, boolean, javax.el.ValueExpression, javax.el.ValueExpression, boolean, com.aoapps.net.URIParameters, boolean, boolean, javax.el.ValueExpression, com.semanticcms.core.renderer.html.LinkRenderer.LinkRendererBody)
+	 */
+	public <Ex extends Throwable> void writeLink(
+		ServletContext servletContext,
+		ELContext elContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		AnyUnion_Palpable_Phrasing<?, ?> content,
+		LinkRenderer.LinkRendererBody<Ex> body
+	) throws Ex, ServletException, IOException, SkipPageException {
+		// Get the current capture state
+		final CaptureLevel captureLevel = CurrentCaptureLevel.getCaptureLevel(request);
+		if(captureLevel.compareTo(CaptureLevel.META) >= 0) {
+			PageRef targetPageRef = getPageRef(servletContext, elContext, request);
+			String elementStr;
+			String anchorStr;
+			String viewNameStr;
+			Object clazzObj;
+			if(captureLevel == CaptureLevel.BODY) {
+				elementStr = element.getValue(elContext);
+				anchorStr = anchor.getValue(elContext);
+				viewNameStr = viewName.getValue(elContext);
+				clazzObj = clazz.getValue(elContext);
+			} else {
+				elementStr = null;
+				anchorStr = null;
+				viewNameStr = null;
+				clazzObj = null;
+			}
+			LinkRenderer.writeLinkImpl(
+				servletContext,
+				request,
+				response,
+				content,
+				targetPageRef,
+				elementStr,
+				allowGeneratedElement,
+				anchorStr,
+				viewNameStr,
+				small,
+				params,
+				absolute,
+				canonical,
+				clazzObj,
+				body,
+				captureLevel
+			);
+		}
+	}
+}
@@ -33,6 +33,10 @@ import javax.servlet.http.HttpServletResponse;
 /**
  * A component is able to render itself within the page.  The theme will
  * call all registered components at the correct stages of page rendering.
+ * <p>
+ * Components may declare the positions and views they apply to, so they are
+ * only called where they contribute.
+ * </p>
  */
 @FunctionalInterface
 public interface Component {
@@ -42,8 +46,8 @@ public interface Component {
 	 * Renders a component in the output stream.
 	 * </p>
 	 * <p>
-	 * This will be called for each of the component positions as the page
-	 * is rendered by the theme.  A component that does not apply to the given
+	 * This will be called for each of the {@linkplain #isApplicable(com.semanticcms.core.renderer.html.ComponentPosition) applicable}
+	 * component positions as the page is rendered by the theme.  A component that does not apply to the given
 	 * view, page, or position should take no action and return quickly.
 	 * </p>
 	 *
@@ -62,4 +66,29 @@ public interface Component {
 		Page page,
 		ComponentPosition position
 	) throws ServletException, IOException;
+
+	/**
+	 * Checks if this component applies to the given position.
+	 * This is determined once when the component is registered and must not change.
+	 * <p>
+	 * Defaults to all positions.
+	 * </p>
+	 */
+	default boolean isApplicable(ComponentPosition position) {
+		return true;
+	}
+
+	/**
+	 * Checks if this component applies to the given view.
+	 * This is determined once per view and must not change.
+	 * <p>
+	 * When {@code false}, the component is still called with a {@code null} view during error handling.
+	 * </p>
+	 * <p>
+	 * Defaults to all views.
+	 * </p>
+	 */
+	default boolean isApplicable(View view) {
+		return true;
+	}
 }
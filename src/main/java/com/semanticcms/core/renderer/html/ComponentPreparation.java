@@ -0,0 +1,226 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2016, 2017, 2019, 2020, 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import com.aoapps.servlet.subrequest.HttpServletSubRequest;
+import com.aoapps.servlet.subrequest.HttpServletSubResponse;
+import com.aoapps.servlet.subrequest.UnmodifiableCopyHttpServletRequest;
+import com.aoapps.servlet.subrequest.UnmodifiableCopyHttpServletResponse;
+import com.aoapps.tempfiles.TempFileContext;
+import com.aoapps.tempfiles.servlet.TempFileContextEE;
+import com.semanticcms.core.controller.ConcurrencyCoordinator;
+import com.semanticcms.core.model.Page;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Runs the {@link PreparedComponent#prepare(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.renderer.html.View, com.semanticcms.core.model.Page) prepare phase}
+ * of components concurrently and holds the results for the current request.
+ * <p>
+ * Each component is prepared in its own subrequest of a thread-safe copy of the request, as done by the controller for
+ * concurrent page captures.  Results are only stored in the request from the rendering thread.
+ * </p>
+ */
+final class ComponentPreparation {
+
+	private static final String REQUEST_ATTRIBUTE = ComponentPreparation.class.getName();
+
+	/**
+	 * The data of one component, along with the view and page it was prepared for.
+	 */
+	private static final class Prepared {
+
+		private final View view;
+		private final Page page;
+		private final Object data;
+
+		private Prepared(View view, Page page, Object data) {
+			this.view = view;
+			this.page = page;
+			this.data = data;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<PreparedComponent<?>, Prepared> getPreparedMap(ServletRequest request, boolean create) {
+		Map<PreparedComponent<?>, Prepared> preparedMap = (Map<PreparedComponent<?>, Prepared>)request.getAttribute(REQUEST_ATTRIBUTE);
+		if(preparedMap == null && create) {
+			preparedMap = new IdentityHashMap<>();
+			request.setAttribute(REQUEST_ATTRIBUTE, preparedMap);
+		}
+		return preparedMap;
+	}
+
+	/**
+	 * Gets the data prepared for the given component, view, and page, preparing it on the current thread when not
+	 * prepared in advance.
+	 */
+	@SuppressWarnings("unchecked")
+	static <D> D getData(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		PreparedComponent<D> component,
+		View view,
+		Page page
+	) throws ServletException, IOException {
+		Map<PreparedComponent<?>, Prepared> preparedMap = getPreparedMap(request, true);
+		Prepared prepared = preparedMap.get(component);
+		if(prepared == null || prepared.view != view || prepared.page != page) {
+			prepared = new Prepared(view, page, component.prepare(servletContext, request, response, view, page));
+			preparedMap.put(component, prepared);
+		}
+		return (D)prepared.data;
+	}
+
+	/**
+	 * Prepare tasks that have been started but not yet joined.
+	 */
+	static final class Handle {
+
+		private final View view;
+		private final Page page;
+		private final List<PreparedComponent<?>> components;
+		private final List<FutureTask<Object>> tasks;
+
+		private Handle(View view, Page page, List<PreparedComponent<?>> components, List<FutureTask<Object>> tasks) {
+			this.view = view;
+			this.page = page;
+			this.components = components;
+			this.tasks = tasks;
+		}
+
+		/**
+		 * Cancels all prepare tasks, such as when the page will not be rendered.
+		 */
+		void cancel() {
+			for(FutureTask<Object> task : tasks) task.cancel(true);
+		}
+
+		/**
+		 * Waits for all prepare tasks to complete, storing their results in the request.
+		 *
+		 * @throws  ServletException  when interrupted or when any component fails with a checked exception other than {@link IOException}
+		 */
+		void join(HttpServletRequest request) throws ServletException, IOException {
+			if(tasks.isEmpty()) return;
+			Map<PreparedComponent<?>, Prepared> preparedMap = getPreparedMap(request, true);
+			for(int i = 0, size = tasks.size(); i < size; i++) {
+				Object data;
+				try {
+					data = tasks.get(i).get();
+				} catch(InterruptedException e) {
+					cancel();
+					Thread.currentThread().interrupt();
+					throw new ServletException(e);
+				} catch(ExecutionException e) {
+					cancel();
+					Throwable cause = e.getCause();
+					if(cause instanceof Error) throw (Error)cause;
+					if(cause instanceof RuntimeException) throw (RuntimeException)cause;
+					if(cause instanceof ServletException) throw (ServletException)cause;
+					if(cause instanceof IOException) throw (IOException)cause;
+					throw new ServletException(cause);
+				}
+				preparedMap.put(components.get(i), new Prepared(view, page, data));
+			}
+		}
+	}
+
+	private static final Handle EMPTY_HANDLE = new Handle(null, null, Collections.emptyList(), Collections.emptyList());
+
+	/**
+	 * Starts preparing all prepared components applicable to the view on the {@linkplain HtmlRenderer#getPrepareExecutor() prepare executor}.
+	 * When there is only one such component, or when {@linkplain ConcurrencyCoordinator#useConcurrentSubrequests(javax.servlet.ServletRequest) concurrent subrequests}
+	 * are not used for this request, components are left to be prepared sequentially when first rendered.
+	 * <p>
+	 * The request is copied when started, so this must be called after any changes to the request the components depend on.
+	 * </p>
+	 *
+	 * @return  the handle to {@linkplain Handle#join(javax.servlet.http.HttpServletRequest) join} before the page is written
+	 */
+	static Handle start(
+		ServletContext servletContext,
+		HtmlRenderer htmlRenderer,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		View view,
+		Page page
+	) {
+		// Find the distinct prepared components in any position
+		Set<PreparedComponent<?>> found = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<PreparedComponent<?>> components = new ArrayList<>();
+		for(ComponentPosition position : ComponentPosition.values()) {
+			for(Component component : htmlRenderer.getComponents(view, position)) {
+				if(component instanceof PreparedComponent && found.add((PreparedComponent<?>)component)) {
+					components.add((PreparedComponent<?>)component);
+				}
+			}
+		}
+		if(
+			components.size() < 2
+			|| !ConcurrencyCoordinator.useConcurrentSubrequests(request)
+		) {
+			return EMPTY_HANDLE;
+		}
+		// The request and response are not thread-safe, so each task uses a subrequest of a thread-safe copy
+		HttpServletRequest threadSafeReq = new UnmodifiableCopyHttpServletRequest(request);
+		HttpServletResponse threadSafeResp = new UnmodifiableCopyHttpServletResponse(response);
+		TempFileContext tempFileContext = TempFileContextEE.get(request);
+		Executor executor = htmlRenderer.getPrepareExecutor();
+		List<FutureTask<Object>> tasks = new ArrayList<>(components.size());
+		for(PreparedComponent<?> component : components) {
+			FutureTask<Object> task = new FutureTask<>(
+				() -> component.prepare(
+					servletContext,
+					new HttpServletSubRequest(threadSafeReq),
+					new HttpServletSubResponse(threadSafeResp, tempFileContext),
+					view,
+					page
+				)
+			);
+			tasks.add(task);
+			executor.execute(task);
+		}
+		return new Handle(view, page, components, tasks);
+	}
+
+	/**
+	 * Make no instances.
+	 */
+	private ComponentPreparation() {
+	}
+}
@@ -0,0 +1,369 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2016, 2017, 2019, 2020, 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import com.aoapps.html.servlet.DocumentEE;
+import com.semanticcms.core.model.Page;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Records the wall time and allocated bytes of each {@link Component} call, by component class and position,
+ * to find which components make a page slow.
+ * <p>
+ * Values are aggregated into histograms of power-of-two buckets: bucket {@code 0} counts values of zero,
+ * and bucket {@code i} counts values in the range <code>[2<sup>i-1</sup>, 2<sup>i</sup>)</code>.  The last bucket
+ * also counts all larger values.
+ * </p>
+ * <p>
+ * Disabled by default.  Enabled by the {@link HtmlRenderer#COMPONENT_STATISTICS_INIT_PARAM} context-param
+ * or at runtime through {@link ComponentStatisticsMXBean}.  When disabled, the only overhead is a single volatile read per call.
+ * </p>
+ *
+ * @see  HtmlRenderer#getComponentStatistics()
+ */
+public final class ComponentStatistics implements ComponentStatisticsMXBean {
+
+	/**
+	 * The number of histogram buckets.
+	 */
+	public static final int BUCKETS = 48;
+
+	private static int getBucket(long value) {
+		if(value <= 0) return 0;
+		return Math.min(Long.SIZE - Long.numberOfLeadingZeros(value), BUCKETS - 1);
+	}
+
+	/**
+	 * The thread bean used to measure allocations or {@code null} when not supported.
+	 * Allocation measurement is only enabled while statistics are enabled.
+	 */
+	private static final com.sun.management.ThreadMXBean allocationBean;
+	static {
+		com.sun.management.ThreadMXBean bean = null;
+		try {
+			ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+			if(threadBean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)threadBean;
+				if(sunBean.isThreadAllocatedMemorySupported()) bean = sunBean;
+			}
+		} catch(LinkageError | UnsupportedOperationException | SecurityException e) {
+			// Allocations not measured
+		}
+		allocationBean = bean;
+	}
+
+	private static final Object allocationLock = new Object();
+
+	/**
+	 * The number of statistics currently enabled, which share allocation measurement for the whole JVM.
+	 */
+	private static int allocationUsers;
+
+	/**
+	 * Whether allocation measurement was enabled before any statistics were enabled, restored once none are enabled.
+	 */
+	private static boolean allocationPreviouslyEnabled;
+
+	private static void startAllocationMeasurement() {
+		if(allocationBean != null) {
+			synchronized(allocationLock) {
+				if(allocationUsers++ == 0) {
+					try {
+						allocationPreviouslyEnabled = allocationBean.isThreadAllocatedMemoryEnabled();
+						if(!allocationPreviouslyEnabled) allocationBean.setThreadAllocatedMemoryEnabled(true);
+					} catch(UnsupportedOperationException | SecurityException e) {
+						// Allocations not measured
+						allocationPreviouslyEnabled = true;
+					}
+				}
+			}
+		}
+	}
+
+	private static void stopAllocationMeasurement() {
+		if(allocationBean != null) {
+			synchronized(allocationLock) {
+				if(--allocationUsers == 0 && !allocationPreviouslyEnabled) {
+					try {
+						allocationBean.setThreadAllocatedMemoryEnabled(false);
+					} catch(UnsupportedOperationException | SecurityException e) {
+						// Leave as-is
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return  the bytes allocated by the current thread or {@code -1} when not currently measured
+	 */
+	@SuppressWarnings("deprecation") // Thread.threadId() not available until Java 19
+	private static long getAllocatedBytes() {
+		return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * A histogram of values.
+	 */
+	private static final class Histogram {
+
+		private final LongAdder total = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+		private void add(long value) {
+			if(value < 0) value = 0;
+			total.add(value);
+			max.accumulateAndGet(value, Math::max);
+			buckets.incrementAndGet(getBucket(value));
+		}
+
+		private long[] getBuckets() {
+			long[] copy = new long[BUCKETS];
+			for(int i = 0; i < BUCKETS; i++) copy[i] = buckets.get(i);
+			return copy;
+		}
+	}
+
+	/**
+	 * The statistics for one component class at one position.
+	 */
+	private static final class Stat {
+
+		private final LongAdder count = new LongAdder();
+		private final Histogram time = new Histogram();
+		private final Histogram allocated = new Histogram();
+	}
+
+	/**
+	 * A snapshot of the statistics for one component class at one position.
+	 */
+	public static final class Entry {
+
+		private final String componentClass;
+		private final ComponentPosition position;
+		private final long count;
+		private final long totalTime;
+		private final long maxTime;
+		private final long[] timeHistogram;
+		private final long totalAllocatedBytes;
+		private final long maxAllocatedBytes;
+		private final long[] allocatedBytesHistogram;
+
+		private Entry(String componentClass, ComponentPosition position, Stat stat, boolean allocationSupported) {
+			this.componentClass = componentClass;
+			this.position = position;
+			this.count = stat.count.sum();
+			this.totalTime = stat.time.total.sum();
+			this.maxTime = stat.time.max.get();
+			this.timeHistogram = stat.time.getBuckets();
+			if(allocationSupported) {
+				this.totalAllocatedBytes = stat.allocated.total.sum();
+				this.maxAllocatedBytes = stat.allocated.max.get();
+				this.allocatedBytesHistogram = stat.allocated.getBuckets();
+			} else {
+				this.totalAllocatedBytes = -1;
+				this.maxAllocatedBytes = -1;
+				this.allocatedBytesHistogram = new long[0];
+			}
+		}
+
+		public String getComponentClass() {
+			return componentClass;
+		}
+
+		public ComponentPosition getPosition() {
+			return position;
+		}
+
+		/**
+		 * Gets the number of calls.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Gets the total wall time of all calls, in nanoseconds.
+		 */
+		public long getTotalTime() {
+			return totalTime;
+		}
+
+		/**
+		 * Gets the longest wall time of a single call, in nanoseconds.
+		 */
+		public long getMaxTime() {
+			return maxTime;
+		}
+
+		/**
+		 * Gets the number of calls in each bucket of wall time, in nanoseconds.
+		 *
+		 * @see  ComponentStatistics#BUCKETS
+		 */
+		@SuppressWarnings("ReturnOfCollectionOrArrayField") // Returning a snapshot
+		public long[] getTimeHistogram() {
+			return timeHistogram;
+		}
+
+		/**
+		 * Gets the total bytes allocated by all calls or {@code -1} when allocations are not measured.
+		 */
+		public long getTotalAllocatedBytes() {
+			return totalAllocatedBytes;
+		}
+
+		/**
+		 * Gets the most bytes allocated by a single call or {@code -1} when allocations are not measured.
+		 */
+		public long getMaxAllocatedBytes() {
+			return maxAllocatedBytes;
+		}
+
+		/**
+		 * Gets the number of calls in each bucket of allocated bytes, empty when allocations are not measured.
+		 *
+		 * @see  ComponentStatistics#BUCKETS
+		 */
+		@SuppressWarnings("ReturnOfCollectionOrArrayField") // Returning a snapshot
+		public long[] getAllocatedBytesHistogram() {
+			return allocatedBytesHistogram;
+		}
+	}
+
+	private volatile boolean enabled;
+
+	/**
+	 * The statistics by component class, indexed by {@link ComponentPosition#ordinal()}.
+	 */
+	private final ConcurrentMap<Class<? extends Component>, Stat[]> stats = new ConcurrentHashMap<>();
+
+	ComponentStatistics(boolean enabled) {
+		setEnabled(enabled);
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables statistics.  Allocation measurement is enabled for the JVM while any statistics are enabled,
+	 * and restored to its previous state once none are.
+	 */
+	@Override
+	public synchronized void setEnabled(boolean enabled) {
+		if(enabled != this.enabled) {
+			if(enabled) startAllocationMeasurement();
+			this.enabled = enabled;
+			if(!enabled) stopAllocationMeasurement();
+		}
+	}
+
+	@Override
+	public boolean isAllocationSupported() {
+		return allocationBean != null;
+	}
+
+	@Override
+	public void reset() {
+		stats.clear();
+	}
+
+	@Override
+	public List<Entry> getEntries() {
+		boolean allocationSupported = isAllocationSupported();
+		List<Entry> entries = new ArrayList<>();
+		for(Map.Entry<Class<? extends Component>, Stat[]> entry : stats.entrySet()) {
+			String componentClass = entry.getKey().getName();
+			Stat[] byPosition = entry.getValue();
+			for(ComponentPosition position : ComponentPosition.values()) {
+				Stat stat = byPosition[position.ordinal()];
+				if(stat.count.sum() != 0) entries.add(new Entry(componentClass, position, stat, allocationSupported));
+			}
+		}
+		entries.sort((e1, e2) -> Long.compare(e2.getTotalTime(), e1.getTotalTime()));
+		return entries;
+	}
+
+	private Stat getStat(Class<? extends Component> componentClass, ComponentPosition position) {
+		return stats.computeIfAbsent(
+			componentClass,
+			clazz -> {
+				Stat[] byPosition = new Stat[ComponentPosition.values().length];
+				for(int i = 0; i < byPosition.length; i++) byPosition[i] = new Stat();
+				return byPosition;
+			}
+		)[position.ordinal()];
+	}
+
+	/**
+	 * Calls a component, recording its statistics when enabled.
+	 *
+	 * @see  Component#doComponent(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.aoapps.html.servlet.DocumentEE, com.semanticcms.core.renderer.html.View, com.semanticcms.core.model.Page, com.semanticcms.core.renderer.html.ComponentPosition)
+	 */
+	void doComponent(
+		Component component,
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		DocumentEE document,
+		View view,
+		Page page,
+		ComponentPosition position
+	) throws ServletException, IOException {
+		if(!enabled) {
+			component.doComponent(servletContext, request, response, document, view, page, position);
+		} else {
+			boolean allocationSupported = allocationBean != null;
+			long startAllocated = allocationSupported ? getAllocatedBytes() : 0;
+			long startTime = System.nanoTime();
+			try {
+				component.doComponent(servletContext, request, response, document, view, page, position);
+			} finally {
+				long time = System.nanoTime() - startTime;
+				long endAllocated = allocationSupported ? getAllocatedBytes() : 0;
+				Stat stat = getStat(component.getClass(), position);
+				stat.count.increment();
+				stat.time.add(time);
+				// Skipped when measurement was disabled elsewhere
+				if(allocationSupported && startAllocated != -1 && endAllocated != -1) stat.allocated.add(endAllocated - startAllocated);
+			}
+		}
+	}
+}
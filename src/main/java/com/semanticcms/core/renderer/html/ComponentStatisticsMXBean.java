@@ -0,0 +1,57 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2016, 2017, 2019, 2020, 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import java.util.List;
+
+/**
+ * Management interface for {@link ComponentStatistics}, registered per application as
+ * <code>com.semanticcms.core.renderer.html:type=ComponentStatistics,context=<i>contextPath</i></code>.
+ */
+public interface ComponentStatisticsMXBean {
+
+	/**
+	 * Is instrumentation currently enabled?
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Enables or disables instrumentation.  Statistics already collected are retained.
+	 */
+	void setEnabled(boolean enabled);
+
+	/**
+	 * Is the allocated bytes of each call measured?  This depends on support by the Java virtual machine.
+	 */
+	boolean isAllocationSupported();
+
+	/**
+	 * Discards all statistics collected so far.
+	 */
+	void reset();
+
+	/**
+	 * Gets the statistics for each component class and position that has been called while enabled.
+	 */
+	List<ComponentStatistics.Entry> getEntries();
+}
@@ -25,7 +25,6 @@ package com.semanticcms.core.renderer.html;
 import com.aoapps.html.servlet.DocumentEE;
 import com.semanticcms.core.model.Page;
 import java.io.IOException;
-import java.util.List;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -46,10 +45,13 @@ final public class ComponentUtils {
 		ComponentPosition position,
 		boolean reverse
 	) throws ServletException, IOException {
-		List<Component> components = HtmlRenderer.getInstance(servletContext).getComponents();
+		HtmlRenderer htmlRenderer = HtmlRenderer.getInstance(servletContext);
+		Component[] components = htmlRenderer.getComponents(view, position);
+		ComponentStatistics statistics = htmlRenderer.getComponentStatistics();
 		if(reverse) {
-			for(int i=components.size()-1; i>=0; i--) {
-				components.get(i).doComponent(
+			for(int i=components.length-1; i>=0; i--) {
+				statistics.doComponent(
+					components[i],
 					servletContext,
 					request,
 					response,
@@ -61,7 +63,8 @@ final public class ComponentUtils {
 			}
 		} else {
 			for(Component component : components) {
-				component.doComponent(
+				statistics.doComponent(
+					component,
 					servletContext,
 					request,
 					response,
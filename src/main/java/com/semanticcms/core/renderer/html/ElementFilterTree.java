@@ -128,6 +128,7 @@ final public class ElementFilterTree {
 				PageRef childPageRef = childRef.getPageRef();
 				// Child is in an accessible book
 				if(semanticCMS.getBook(childPageRef.getBookRef()).isAccessible()) {
+					ExportDependencies.addDependency(request, childPageRef);
 					Page child = CapturePage.capturePage(servletContext, request, response, childPageRef, CaptureLevel.META);
 					if(findElements(servletContext, request, response, semanticCMS, elementFilter, nodesWithMatches, child, includeElements)) {
 						hasMatch = true;
@@ -172,8 +173,8 @@ final public class ElementFilterTree {
 		AnyLI_c<?, ?, ?> li_c;
 		if(ul__ != null) {
 			StringBuilder url = new StringBuilder();
-			Integer index = pageIndex==null ? null : pageIndex.getPageIndex(pageRef);
-			if(index != null) {
+			int index = pageIndex==null ? -1 : pageIndex.indexOf(pageRef);
+			if(index != -1 && pageIndex.isInRange(index)) {
 				url.append('#');
 				URIEncoder.encodeURIComponent(
 					PageIndex.getRefId(
@@ -182,6 +183,16 @@ final public class ElementFilterTree {
 					),
 					url
 				);
+			} else if(index != -1) {
+				// Page in another range of the combined view
+				URIEncoder.encodeURI(request.getContextPath(), url);
+				URIEncoder.encodeURI(
+					pageIndex.getRangeHref(
+						index,
+						element==null ? null : element.getId()
+					),
+					url
+				);
 			} else {
 				URIEncoder.encodeURI(request.getContextPath(), url);
 				URIEncoder.encodeURI(pageRef.getBookRef().getPrefix(), url);
@@ -198,7 +209,7 @@ final public class ElementFilterTree {
 				._c();
 			li_c.a(response.encodeURL(url.toString())).__(a -> {
 				a.text(node);
-				if(index != null) {
+				if(index != -1) {
 					a.sup__any(sup -> sup
 						.text('[').text(index + 1).text(']')
 					);
@@ -0,0 +1,251 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2016, 2017, 2019, 2020, 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import com.aoapps.lang.validation.ValidationException;
+import com.aoapps.net.DomainName;
+import com.aoapps.net.URIDecoder;
+import com.aoapps.net.URIEncoder;
+import com.semanticcms.core.model.BookRef;
+import com.semanticcms.core.model.PageRef;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.ServletRequest;
+
+/**
+ * Records the pages captured while rendering an exported file, so later exports may re-render only the
+ * files that depend on changed pages.
+ * <p>
+ * Recording is only active within requests made by {@link Exporter}.  The rendering pipeline of this module
+ * records the pages it captures or looks-up, including the navigation tree, link targets, parents, page indexes,
+ * and the pages captured by {@linkplain FragmentCache cached fragments}.
+ * Themes, views, and components that capture pages by other means should record them with
+ * {@link #addDependency(javax.servlet.ServletRequest, com.semanticcms.core.model.PageRef)}.
+ * </p>
+ */
+public final class ExportDependencies {
+
+	private static final String REQUEST_ATTRIBUTE = ExportDependencies.class.getName();
+
+	/**
+	 * The first line of the persisted dependencies, for the current format.
+	 */
+	private static final String HEADER = "# semanticcms-core-renderer-html export dependencies 1";
+
+	private static ExportDependencies getRecording(ServletRequest request) {
+		return (ExportDependencies)request.getAttribute(REQUEST_ATTRIBUTE);
+	}
+
+	/**
+	 * Checks if dependencies are being recorded for the given request.
+	 */
+	public static boolean isRecording(ServletRequest request) {
+		return getRecording(request) != null;
+	}
+
+	/**
+	 * Records that the file being exported depends on the given page.  Does nothing when not
+	 * {@linkplain #isRecording(javax.servlet.ServletRequest) recording}.
+	 */
+	public static void addDependency(ServletRequest request, PageRef pageRef) {
+		ExportDependencies recording = getRecording(request);
+		if(recording != null) recording.pageRefs.add(pageRef);
+	}
+
+	/**
+	 * Records that the file being exported depends on all the given pages.  Does nothing when not
+	 * {@linkplain #isRecording(javax.servlet.ServletRequest) recording}.
+	 */
+	public static void addDependencies(ServletRequest request, Collection<? extends PageRef> pageRefs) {
+		ExportDependencies recording = getRecording(request);
+		if(recording != null) recording.pageRefs.addAll(pageRefs);
+	}
+
+	/**
+	 * Concurrent since pages may be captured by concurrent subrequests.
+	 */
+	private final Set<PageRef> pageRefs = ConcurrentHashMap.newKeySet();
+
+	ExportDependencies() {
+	}
+
+	/**
+	 * Starts recording into this set for the given request.
+	 */
+	void record(ServletRequest request) {
+		request.setAttribute(REQUEST_ATTRIBUTE, this);
+	}
+
+	Set<PageRef> getPageRefs() {
+		return pageRefs;
+	}
+
+	/**
+	 * Starts recording into this set, nested within the current recording of the given request.
+	 *
+	 * @return  the current recording, to be passed to {@link #endNested(javax.servlet.ServletRequest, com.semanticcms.core.renderer.html.ExportDependencies)}
+	 */
+	ExportDependencies startNested(ServletRequest request) {
+		ExportDependencies outer = getRecording(request);
+		record(request);
+		return outer;
+	}
+
+	/**
+	 * Ends nested recording, restoring the outer recording and adding all pages recorded by this set to it.
+	 */
+	void endNested(ServletRequest request, ExportDependencies outer) {
+		request.setAttribute(REQUEST_ATTRIBUTE, outer);
+		if(outer != null) outer.pageRefs.addAll(pageRefs);
+	}
+
+	/**
+	 * The dependencies of one exported file.
+	 */
+	static final class FileDependencies {
+
+		private final String path;
+		private final PageRef pageRef;
+		private final Set<PageRef> dependencies;
+
+		/**
+		 * @param  path  the path of the file, relative to the export root
+		 * @param  pageRef  the page the file was rendered from
+		 */
+		FileDependencies(String path, PageRef pageRef, Set<PageRef> dependencies) {
+			this.path = path;
+			this.pageRef = pageRef;
+			this.dependencies = dependencies;
+		}
+
+		String getPath() {
+			return path;
+		}
+
+		PageRef getPageRef() {
+			return pageRef;
+		}
+
+		/**
+		 * Checks if the file depends on any of the given pages, including the page it was rendered from.
+		 */
+		boolean dependsOnAny(Set<PageRef> pageRefs) {
+			if(pageRefs.contains(pageRef)) return true;
+			for(PageRef dependency : dependencies) {
+				if(pageRefs.contains(dependency)) return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Reads the dependencies of all files from a previous export.
+	 *
+	 * @return  the dependencies by file path, empty when the file does not exist
+	 */
+	static Map<String, FileDependencies> read(Path file) throws IOException {
+		if(!Files.exists(file)) return Collections.emptyMap();
+		Map<String, FileDependencies> filesByPath = new LinkedHashMap<>();
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line = in.readLine();
+			if(!HEADER.equals(line)) throw new IOException("Unexpected export dependencies format: " + file);
+			while((line = in.readLine()) != null) {
+				if(line.isEmpty()) continue;
+				String[] fields = line.split("\t", -1);
+				if(fields.length < 4 || (fields.length - 1) % 3 != 0) throw new IOException("Invalid export dependencies line: " + line);
+				try {
+					String path = URIDecoder.decodeURIComponent(fields[0]);
+					PageRef pageRef = parsePageRef(fields, 1);
+					Set<PageRef> dependencies = new LinkedHashSet<>();
+					for(int i = 4; i < fields.length; i += 3) {
+						dependencies.add(parsePageRef(fields, i));
+					}
+					filesByPath.put(path, new FileDependencies(path, pageRef, dependencies));
+				} catch(ValidationException e) {
+					throw new IOException("Invalid export dependencies line: " + line, e);
+				}
+			}
+		}
+		return filesByPath;
+	}
+
+	private static PageRef parsePageRef(String[] fields, int pos) throws ValidationException {
+		String domain = URIDecoder.decodeURIComponent(fields[pos]);
+		return new PageRef(
+			new BookRef(
+				domain.isEmpty() ? null : DomainName.valueOf(domain),
+				com.aoapps.net.Path.valueOf(URIDecoder.decodeURIComponent(fields[pos + 1]))
+			),
+			com.aoapps.net.Path.valueOf(URIDecoder.decodeURIComponent(fields[pos + 2]))
+		);
+	}
+
+	private static void appendPageRef(PageRef pageRef, Appendable out) throws IOException {
+		BookRef bookRef = pageRef.getBookRef();
+		DomainName domain = bookRef.getDomain();
+		out.append('\t');
+		if(domain != null) URIEncoder.encodeURIComponent(domain.toString(), out);
+		out.append('\t');
+		URIEncoder.encodeURIComponent(bookRef.getPath().toString(), out);
+		out.append('\t');
+		URIEncoder.encodeURIComponent(pageRef.getPath().toString(), out);
+	}
+
+	/**
+	 * Writes the dependencies of all files, replacing the file only once fully written.
+	 */
+	static void write(Path file, Collection<FileDependencies> files) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		if(parent != null) Files.createDirectories(parent);
+		Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+		try {
+			try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				out.write(HEADER);
+				out.newLine();
+				for(FileDependencies fileDependencies : files) {
+					URIEncoder.encodeURIComponent(fileDependencies.path, out);
+					appendPageRef(fileDependencies.pageRef, out);
+					for(PageRef dependency : fileDependencies.dependencies) {
+						appendPageRef(dependency, out);
+					}
+					out.newLine();
+				}
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+}
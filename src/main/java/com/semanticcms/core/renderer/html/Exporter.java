@@ -0,0 +1,946 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2016, 2017, 2019, 2020, 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import com.aoapps.net.URIDecoder;
+import com.aoapps.net.URIEncoder;
+import com.aoapps.servlet.subrequest.HttpServletSubRequest;
+import com.aoapps.servlet.subrequest.HttpServletSubResponse;
+import com.aoapps.servlet.subrequest.UnmodifiableCopyHttpServletRequest;
+import com.aoapps.servlet.subrequest.UnmodifiableCopyHttpServletResponse;
+import com.aoapps.tempfiles.TempFileContext;
+import com.aoapps.tempfiles.servlet.TempFileContextEE;
+import com.semanticcms.core.controller.Book;
+import com.semanticcms.core.controller.CapturePage;
+import com.semanticcms.core.controller.PageUtils;
+import com.semanticcms.core.controller.SemanticCMS;
+import com.semanticcms.core.model.Link;
+import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.pages.CaptureLevel;
+import com.semanticcms.core.renderer.html.ExportDependencies.FileDependencies;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Exports all books as a static site, rendering each page in every applicable view through the regular
+ * {@link HtmlRenderer} pipeline, in-process, instead of being crawled over HTTP.
+ * <p>
+ * Pages are forwarded to on a bounded number of threads, using virtual threads when available.
+ * As done by the controller for concurrent subrequests, each forward receives its own subrequest of a thread-safe
+ * copy of the request that started the export, with the
+ * {@linkplain Headers#isExporting(javax.servlet.http.HttpServletRequest) exporting header} set.
+ * </p>
+ * <p>
+ * The default view of a page is written to <code><i>servletPath</i>.html</code>, and other views to
+ * <code><i>servletPath</i>.<i>viewName</i>.html</code>.  Pages whose path ends in a slash are written as
+ * <code>index</code> within that directory.  Links between exported pages are rewritten to these files.
+ * </p>
+ * <p>
+ * The resources of this application referenced by exported pages, such as stylesheets, images, and scripts, are
+ * written at their own paths, along with the resources referenced by exported stylesheets.  The registered scripts
+ * and their {@linkplain HtmlRenderer#getBundledScripts() bundles} are always written.
+ * </p>
+ * <p>
+ * With a dependencies file, exports may be incremental, re-rendering only the files that depend on changed pages.
+ * See {@link ExportDependencies}.
+ * </p>
+ * <p>
+ * This writes to the filesystem, so it is not bound to any URL.  Call it from a request that is
+ * restricted to administrators.
+ * </p>
+ */
+public final class Exporter {
+
+	/**
+	 * The extension added to the path of each exported page.
+	 */
+	public static final String HTML_EXTENSION = ".html";
+
+	/**
+	 * Exports all accessible books, with one thread per processor.
+	 *
+	 * @see  #export(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, java.nio.file.Path, int)
+	 */
+	public static int export(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		Path targetDirectory
+	) throws ServletException, IOException {
+		return export(servletContext, request, response, targetDirectory, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Exports all accessible books, without recording dependencies.
+	 *
+	 * @see  #export(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, java.nio.file.Path, int, java.nio.file.Path, java.util.Collection)
+	 */
+	public static int export(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		Path targetDirectory,
+		int concurrency
+	) throws ServletException, IOException {
+		return export(servletContext, request, response, targetDirectory, concurrency, null, null);
+	}
+
+	/**
+	 * Exports all accessible books, optionally re-rendering only the files affected by changed pages.
+	 * <p>
+	 * When a dependencies file is given, the pages each exported file depends on are
+	 * {@linkplain ExportDependencies recorded} and saved to it once the export succeeds.  Files of pages that are no
+	 * longer exported, or views that no longer apply, are deleted.
+	 * </p>
+	 * <p>
+	 * When changed pages are also given, only the files that depend on a changed page, added page, or removed page,
+	 * along with any files missing from the target directory, are re-rendered.  All other files are left untouched.
+	 * </p>
+	 *
+	 * @param  request  the request starting the export, which must remain active until this returns
+	 * @param  concurrency  the maximum number of pages rendered at once
+	 * @param  dependenciesFile  the file the dependencies are persisted in or {@code null} to not record dependencies.
+	 *                           This is typically outside the target directory, since it is not part of the site.
+	 * @param  changedPages  the pages changed since the previous export or {@code null} to export all pages
+	 *
+	 * @return  the number of files written
+	 *
+	 * @throws  ServletException  when any page does not render successfully, after all pages in progress have completed
+	 */
+	public static int export(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		Path targetDirectory,
+		int concurrency,
+		Path dependenciesFile,
+		Collection<? extends PageRef> changedPages
+	) throws ServletException, IOException {
+		if(concurrency < 1) throw new IllegalArgumentException("concurrency < 1: " + concurrency);
+		if(changedPages != null && dependenciesFile == null) throw new IllegalArgumentException("changedPages requires dependenciesFile");
+		Path target = targetDirectory.toAbsolutePath().normalize();
+		HtmlRenderer htmlRenderer = HtmlRenderer.getInstance(servletContext);
+		SemanticCMS semanticCMS = SemanticCMS.getInstance(servletContext);
+		// Find all pages of accessible books, in the order of each book's page index, without retaining the pages
+		Set<PageRef> pageRefs = new LinkedHashSet<>();
+		for(Book book : semanticCMS.getBooks().values()) {
+			if(book.isAccessible()) {
+				pageRefs.addAll(PageIndex.getStreamingPageIndex(servletContext, request, response, book.getContentRoot()).getPageRefs());
+			}
+		}
+		// Links to exported pages are rewritten
+		Map<String, PageRef> pagesByServletPath = new HashMap<>();
+		for(PageRef pageRef : pageRefs) {
+			pagesByServletPath.put(pageRef.getBookRef().getPrefix() + pageRef.getPath(), pageRef);
+		}
+		// The request and response are not thread-safe, so each forward uses a subrequest of a thread-safe copy
+		HttpServletRequest threadSafeReq = new UnmodifiableCopyHttpServletRequest(request);
+		HttpServletResponse threadSafeResp = new UnmodifiableCopyHttpServletResponse(response);
+		TempFileContext tempFileContext = TempFileContextEE.get(request);
+		// The servlet paths of resources referenced by exported pages
+		Set<String> resources = ConcurrentHashMap.newKeySet();
+		// Load the previous dependencies
+		boolean recording = dependenciesFile != null;
+		Map<String, FileDependencies> previous = recording ? ExportDependencies.read(dependenciesFile) : Collections.emptyMap();
+		Map<PageRef, List<FileDependencies>> previousByPage = new HashMap<>();
+		for(FileDependencies fileDependencies : previous.values()) {
+			previousByPage.computeIfAbsent(fileDependencies.getPageRef(), pageRef -> new ArrayList<>()).add(fileDependencies);
+		}
+		Set<PageRef> changed;
+		if(changedPages == null) {
+			changed = null;
+		} else {
+			changed = new HashSet<>(changedPages);
+			// Added and removed pages change the navigation of the pages around them
+			for(PageRef pageRef : pageRefs) {
+				if(!previousByPage.containsKey(pageRef)) changed.add(pageRef);
+			}
+			for(PageRef pageRef : previousByPage.keySet()) {
+				if(!pageRefs.contains(pageRef)) changed.add(pageRef);
+			}
+		}
+		List<View> views = new ArrayList<>(htmlRenderer.getViews());
+		Map<String, FileDependencies> current = new ConcurrentHashMap<>();
+		AtomicInteger fileCount = new AtomicInteger();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Semaphore permits = new Semaphore(concurrency);
+		ExecutorService executor = AsyncRendering.newExecutor(Exporter.class.getName());
+		try {
+			for(PageRef pageRef : pageRefs) {
+				List<FileDependencies> previousFiles = previousByPage.getOrDefault(pageRef, Collections.emptyList());
+				if(changed != null && !isAffected(target, previousFiles, changed)) {
+					for(FileDependencies fileDependencies : previousFiles) current.put(fileDependencies.getPath(), fileDependencies);
+					continue;
+				}
+				permits.acquire();
+				if(failure.get() != null) {
+					permits.release();
+					break;
+				}
+				executor.execute(() -> {
+					try {
+						Set<String> exportedPaths = new HashSet<>();
+						for(FileDependencies fileDependencies : exportPage(
+							servletContext,
+							htmlRenderer,
+							threadSafeReq,
+							threadSafeResp,
+							tempFileContext,
+							pagesByServletPath,
+							resources,
+							views,
+							pageRef,
+							target,
+							recording
+						)) {
+							current.put(fileDependencies.getPath(), fileDependencies);
+							exportedPaths.add(fileDependencies.getPath());
+							fileCount.incrementAndGet();
+						}
+						// Remove views that no longer apply
+						for(FileDependencies fileDependencies : previousFiles) {
+							if(!exportedPaths.contains(fileDependencies.getPath())) delete(target, fileDependencies.getPath());
+						}
+					} catch(Throwable t) {
+						if(!failure.compareAndSet(null, t)) failure.get().addSuppressed(t);
+					} finally {
+						permits.release();
+					}
+				});
+			}
+			// Wait for all pages in progress
+			permits.acquire(concurrency);
+			permits.release(concurrency);
+		} catch(InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new ServletException(e);
+		} finally {
+			executor.shutdown();
+		}
+		Throwable t = failure.get();
+		if(t != null) {
+			if(t instanceof Error) throw (Error)t;
+			if(t instanceof RuntimeException) throw (RuntimeException)t;
+			if(t instanceof ServletException) throw (ServletException)t;
+			if(t instanceof IOException) throw (IOException)t;
+			throw new ServletException(t);
+		}
+		// Remove pages no longer exported
+		for(FileDependencies fileDependencies : previous.values()) {
+			if(!pageRefs.contains(fileDependencies.getPageRef())) delete(target, fileDependencies.getPath());
+		}
+		fileCount.addAndGet(exportResources(servletContext, htmlRenderer, pagesByServletPath, resources, target));
+		if(recording) ExportDependencies.write(dependenciesFile, new TreeMap<>(current).values());
+		return fileCount.get();
+	}
+
+	/**
+	 * Checks if the files previously exported for a page must be re-rendered.
+	 *
+	 * @param  previousFiles  the files previously exported for the page, empty when the page is new
+	 */
+	private static boolean isAffected(Path target, List<FileDependencies> previousFiles, Set<PageRef> changed) {
+		if(previousFiles.isEmpty()) return true;
+		for(FileDependencies fileDependencies : previousFiles) {
+			if(
+				fileDependencies.dependsOnAny(changed)
+				|| !Files.exists(resolve(target, fileDependencies.getPath()))
+			) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the path, relative to the export root, a page is written to.
+	 *
+	 * @param  viewName  the name of the view or {@code null} for the default view
+	 */
+	public static String getExportPath(PageRef pageRef, String viewName) {
+		String servletPath = pageRef.getBookRef().getPrefix() + pageRef.getPath();
+		StringBuilder sb = new StringBuilder(servletPath.length() + 32);
+		sb.append(servletPath);
+		if(servletPath.endsWith("/")) sb.append("index");
+		if(viewName != null && !Link.DEFAULT_VIEW_NAME.equals(viewName)) sb.append('.').append(viewName);
+		return sb.append(HTML_EXTENSION).toString();
+	}
+
+	/**
+	 * Renders a page in all applicable views.
+	 *
+	 * @param  threadSafeReq  the thread-safe copy of the request that started the export
+	 * @param  threadSafeResp  the thread-safe copy of the response of the request that started the export
+	 * @param  pagesByServletPath  the exported pages, for rewriting links
+	 * @param  resources  the servlet paths of other resources referenced by the page are added here
+	 * @param  recording  when {@code true}, the dependencies of each file are recorded
+	 *
+	 * @return  the files written
+	 */
+	private static List<FileDependencies> exportPage(
+		ServletContext servletContext,
+		HtmlRenderer htmlRenderer,
+		HttpServletRequest threadSafeReq,
+		HttpServletResponse threadSafeResp,
+		TempFileContext tempFileContext,
+		Map<String, PageRef> pagesByServletPath,
+		Set<String> resources,
+		List<View> views,
+		PageRef pageRef,
+		Path target,
+		boolean recording
+	) throws ServletException, IOException {
+		String servletPath = pageRef.getBookRef().getPrefix() + pageRef.getPath();
+		ExportRequest captureRequest = new ExportRequest(new HttpServletSubRequest(threadSafeReq), null);
+		HttpServletResponse captureResponse = new HttpServletSubResponse(threadSafeResp, tempFileContext);
+		// Dependencies common to all views: view applicability and ancestors, which provide inherited copyright and authors
+		ExportDependencies pageDependencies = new ExportDependencies();
+		if(recording) pageDependencies.record(captureRequest);
+		Page page = CapturePage.capturePage(servletContext, captureRequest, captureResponse, pageRef, CaptureLevel.META);
+		if(recording) addAncestors(servletContext, captureRequest, captureResponse, page, pageDependencies.getPageRefs());
+		BitSet applicable = htmlRenderer.getApplicableViews(captureRequest, captureResponse, views, page);
+		List<FileDependencies> files = new ArrayList<>(applicable.cardinality());
+		for(int i = applicable.nextSetBit(0); i >= 0; i = applicable.nextSetBit(i + 1)) {
+			String viewName = views.get(i).getName();
+			boolean isDefault = Link.DEFAULT_VIEW_NAME.equals(viewName);
+			RequestDispatcher dispatcher = servletContext.getRequestDispatcher(servletPath);
+			if(dispatcher == null) throw new ServletException("Unable to dispatch to page: " + servletPath);
+			ExportRequest viewRequest = new ExportRequest(new HttpServletSubRequest(threadSafeReq), isDefault ? null : viewName);
+			ExportDependencies viewDependencies = new ExportDependencies();
+			if(recording) viewDependencies.record(viewRequest);
+			ExportResponse viewResponse = new ExportResponse(
+				new HttpServletSubResponse(threadSafeResp, tempFileContext),
+				threadSafeReq.getContextPath(),
+				pagesByServletPath,
+				resources
+			);
+			dispatcher.forward(viewRequest, viewResponse);
+			int status = viewResponse.getStatus();
+			if(status != HttpServletResponse.SC_OK) {
+				throw new ServletException("Unable to export page, status " + status + ": " + servletPath + (isDefault ? "" : ("?" + HtmlRenderer.VIEW_PARAM + "=" + viewName)));
+			}
+			String path = getExportPath(pageRef, viewName);
+			write(target, path, viewResponse.getContent());
+			Set<PageRef> dependencies;
+			if(recording) {
+				dependencies = new LinkedHashSet<>(pageDependencies.getPageRefs());
+				dependencies.addAll(viewDependencies.getPageRefs());
+				dependencies.remove(pageRef);
+			} else {
+				dependencies = Collections.emptySet();
+			}
+			files.add(new FileDependencies(path, pageRef, dependencies));
+		}
+		return files;
+	}
+
+	/**
+	 * Adds all ancestors of a page in accessible books, capturing each level of parents together.
+	 */
+	private static void addAncestors(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		Page page,
+		Set<PageRef> ancestors
+	) throws ServletException, IOException {
+		Collection<Page> level = Collections.singleton(page);
+		while(true) {
+			Set<PageRef> frontier = new LinkedHashSet<>();
+			for(Page child : level) {
+				for(PageRef parentRef : PageUtils.filterNotMissingBook(servletContext, child.getParentRefs())) {
+					if(ancestors.add(parentRef)) frontier.add(parentRef);
+				}
+			}
+			if(frontier.isEmpty()) break;
+			level = CapturePage.capturePages(servletContext, request, response, frontier, CaptureLevel.PAGE).values();
+		}
+	}
+
+	/**
+	 * Matches the resources referenced by a stylesheet, in group 1 or 2.
+	 */
+	private static final Pattern STYLESHEET_REFERENCE = Pattern.compile(
+		"url\\(\\s*['\"]?([^'\")]+?)['\"]?\\s*\\)|@import\\s+['\"]([^'\"]+)['\"]"
+	);
+
+	/**
+	 * Writes the resources of this application referenced by the exported pages, the resources referenced by
+	 * exported stylesheets, the registered scripts, and the script bundles.
+	 *
+	 * @param  resources  the servlet paths of the resources referenced by the exported pages
+	 *
+	 * @return  the number of files written
+	 */
+	private static int exportResources(
+		ServletContext servletContext,
+		HtmlRenderer htmlRenderer,
+		Map<String, PageRef> pagesByServletPath,
+		Set<String> resources,
+		Path target
+	) throws IOException {
+		Deque<String> queue = new ArrayDeque<>(resources);
+		queue.addAll(htmlRenderer.getScripts().values());
+		queue.addAll(htmlRenderer.getBundledScripts().values());
+		Set<String> seen = new HashSet<>();
+		int count = 0;
+		String src;
+		while((src = queue.poll()) != null) {
+			if(
+				!src.startsWith("/")
+				|| src.startsWith("//")
+				|| src.indexOf('?') != -1
+				|| src.indexOf('#') != -1
+				|| src.endsWith("/")
+				|| pagesByServletPath.containsKey(src)
+				|| !seen.add(src)
+			) {
+				continue;
+			}
+			byte[] content;
+			if(src.startsWith(ScriptBundles.BUNDLE_PATH_PREFIX)) {
+				content = htmlRenderer.getScriptBundle(src.substring(ScriptBundles.BUNDLE_PATH_PREFIX.length()));
+			} else {
+				try (InputStream in = servletContext.getResourceAsStream(src)) {
+					if(in == null) {
+						content = null;
+					} else {
+						ByteArrayOutputStream out = new ByteArrayOutputStream();
+						byte[] buff = new byte[4096];
+						int numBytes;
+						while((numBytes = in.read(buff)) != -1) out.write(buff, 0, numBytes);
+						content = out.toByteArray();
+					}
+				}
+			}
+			if(content != null) {
+				write(target, src, content);
+				count++;
+				if(src.endsWith(".css")) addStylesheetReferences(src, content, queue);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Adds the local resources referenced by a stylesheet, such as images, fonts, and imported stylesheets.
+	 */
+	private static void addStylesheetReferences(String src, byte[] content, Collection<String> resources) {
+		URI base;
+		try {
+			base = new URI(URIEncoder.encodeURI(src));
+		} catch(URISyntaxException e) {
+			return;
+		}
+		Matcher matcher = STYLESHEET_REFERENCE.matcher(new String(content, StandardCharsets.UTF_8));
+		while(matcher.find()) {
+			String ref = matcher.group(1);
+			if(ref == null) ref = matcher.group(2);
+			ref = ref.trim();
+			if(ref.isEmpty() || ref.startsWith("data:") || ref.startsWith("#")) continue;
+			try {
+				URI resolved = base.resolve(ref);
+				if(resolved.getScheme() == null && resolved.getAuthority() == null) {
+					String path = resolved.getPath();
+					if(path != null) resources.add(path);
+				}
+			} catch(IllegalArgumentException e) {
+				// Not a valid URI, skip
+			}
+		}
+	}
+
+	/**
+	 * Resolves a path within the export directory.
+	 */
+	private static Path resolve(Path target, String path) {
+		Path file = target.resolve(path.substring(1)).normalize();
+		if(!file.startsWith(target)) throw new IllegalArgumentException("Path outside of export directory: " + path);
+		return file;
+	}
+
+	private static void write(Path target, String path, byte[] content) throws IOException {
+		Path file = resolve(target, path);
+		Path parent = file.getParent();
+		if(parent != null) Files.createDirectories(parent);
+		Files.write(file, content);
+	}
+
+	private static void delete(Path target, String path) throws IOException {
+		Files.deleteIfExists(resolve(target, path));
+	}
+
+	/**
+	 * A request for exporting a page in one view, wrapping a subrequest that keeps the attributes set during the export.
+	 * Conditional headers are removed so the full page is always rendered.
+	 */
+	private static class ExportRequest extends HttpServletRequestWrapper {
+
+		private static final Set<String> REMOVED_HEADERS;
+		static {
+			Set<String> removed = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+			Collections.addAll(removed, "If-Match", "If-Modified-Since", "If-None-Match", "If-Range", "If-Unmodified-Since", "Range");
+			REMOVED_HEADERS = Collections.unmodifiableSet(removed);
+		}
+
+		private final String viewName;
+
+		/**
+		 * @param  viewName  the name of the view or {@code null} for the default view
+		 */
+		private ExportRequest(HttpServletRequest request, String viewName) {
+			super(request);
+			this.viewName = viewName;
+		}
+
+		@Override
+		public String getMethod() {
+			return "GET";
+		}
+
+		@Override
+		public boolean isAsyncSupported() {
+			return false;
+		}
+
+		@Override
+		public String getQueryString() {
+			return viewName == null ? null : (HtmlRenderer.VIEW_PARAM + "=" + URIEncoder.encodeURIComponent(viewName));
+		}
+
+		@Override
+		public String getParameter(String name) {
+			return (viewName != null && HtmlRenderer.VIEW_PARAM.equals(name)) ? viewName : null;
+		}
+
+		@Override
+		public Map<String, String[]> getParameterMap() {
+			return viewName == null
+				? Collections.emptyMap()
+				: Collections.singletonMap(HtmlRenderer.VIEW_PARAM, new String[] {viewName});
+		}
+
+		@Override
+		public Enumeration<String> getParameterNames() {
+			return Collections.enumeration(getParameterMap().keySet());
+		}
+
+		@Override
+		public String[] getParameterValues(String name) {
+			return (viewName != null && HtmlRenderer.VIEW_PARAM.equals(name)) ? new String[] {viewName} : null;
+		}
+
+		@Override
+		public String getHeader(String name) {
+			if(Headers.EXPORTING_HEADER.equalsIgnoreCase(name)) return Headers.EXPORTING_HEADER_VALUE;
+			if(REMOVED_HEADERS.contains(name)) return null;
+			return super.getHeader(name);
+		}
+
+		@Override
+		public Enumeration<String> getHeaders(String name) {
+			if(Headers.EXPORTING_HEADER.equalsIgnoreCase(name)) return Collections.enumeration(Collections.singleton(Headers.EXPORTING_HEADER_VALUE));
+			if(REMOVED_HEADERS.contains(name)) return Collections.emptyEnumeration();
+			return super.getHeaders(name);
+		}
+
+		@Override
+		public Enumeration<String> getHeaderNames() {
+			Set<String> names = new LinkedHashSet<>();
+			Enumeration<String> superNames = super.getHeaderNames();
+			if(superNames != null) {
+				while(superNames.hasMoreElements()) {
+					String name = superNames.nextElement();
+					if(!REMOVED_HEADERS.contains(name) && !Headers.EXPORTING_HEADER.equalsIgnoreCase(name)) names.add(name);
+				}
+			}
+			names.add(Headers.EXPORTING_HEADER);
+			return Collections.enumeration(names);
+		}
+
+		@Override
+		public long getDateHeader(String name) {
+			if(REMOVED_HEADERS.contains(name)) return -1;
+			return super.getDateHeader(name);
+		}
+
+		@Override
+		public int getIntHeader(String name) {
+			if(REMOVED_HEADERS.contains(name)) return -1;
+			return super.getIntHeader(name);
+		}
+	}
+
+	/**
+	 * Captures the status and content of a page, without affecting the wrapped response.
+	 * Links to exported pages are rewritten to their exported files, and references to other resources are collected.
+	 */
+	private static class ExportResponse extends HttpServletResponseWrapper {
+
+		private final String contextPath;
+		private final Map<String, PageRef> pagesByServletPath;
+		private final Set<String> resources;
+
+		private int status = SC_OK;
+		private String contentType;
+		private String characterEncoding = StandardCharsets.UTF_8.name();
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private CharArrayWriter chars;
+		private PrintWriter writer;
+		private ServletOutputStream out;
+
+		/**
+		 * @param  pagesByServletPath  the exported pages
+		 * @param  resources  the servlet paths of other resources referenced by the page are added here
+		 */
+		private ExportResponse(
+			HttpServletResponse response,
+			String contextPath,
+			Map<String, PageRef> pagesByServletPath,
+			Set<String> resources
+		) {
+			super(response);
+			this.contextPath = contextPath;
+			this.pagesByServletPath = pagesByServletPath;
+			this.resources = resources;
+		}
+
+		/**
+		 * Rewrites a link to an exported page to its exported file, in the same view.
+		 * Other root-relative URLs are added to the resources.
+		 */
+		private String rewrite(String url) {
+			if(!url.startsWith("/") || url.startsWith("//")) return url;
+			int fragmentPos = url.indexOf('#');
+			String beforeFragment = fragmentPos == -1 ? url : url.substring(0, fragmentPos);
+			int queryPos = beforeFragment.indexOf('?');
+			String path = queryPos == -1 ? beforeFragment : beforeFragment.substring(0, queryPos);
+			if(!contextPath.isEmpty()) {
+				if(!path.startsWith(contextPath) || path.length() == contextPath.length() || path.charAt(contextPath.length()) != '/') return url;
+				path = path.substring(contextPath.length());
+			}
+			String servletPath = URIDecoder.decodeURI(path);
+			PageRef pageRef = pagesByServletPath.get(servletPath);
+			if(pageRef == null) {
+				if(queryPos == -1) resources.add(servletPath);
+				return url;
+			}
+			String viewName;
+			if(queryPos == -1) {
+				viewName = null;
+			} else {
+				String query = beforeFragment.substring(queryPos + 1);
+				String viewPrefix = HtmlRenderer.VIEW_PARAM + '=';
+				// Only the view parameter is exported
+				if(!query.startsWith(viewPrefix) || query.indexOf('&') != -1) return url;
+				viewName = URIDecoder.decodeURIComponent(query.substring(viewPrefix.length()));
+			}
+			StringBuilder rewritten = new StringBuilder(url.length() + 16);
+			URIEncoder.encodeURI(contextPath, rewritten);
+			URIEncoder.encodeURI(getExportPath(pageRef, viewName), rewritten);
+			if(fragmentPos != -1) rewritten.append(url, fragmentPos, url.length());
+			return rewritten.toString();
+		}
+
+		@Override
+		public String encodeURL(String url) {
+			return super.encodeURL(rewrite(url));
+		}
+
+		@Override
+		public String encodeRedirectURL(String url) {
+			return super.encodeRedirectURL(rewrite(url));
+		}
+
+		@Deprecated
+		@Override
+		@SuppressWarnings("deprecation")
+		public String encodeUrl(String url) {
+			return super.encodeUrl(rewrite(url));
+		}
+
+		@Deprecated
+		@Override
+		@SuppressWarnings("deprecation")
+		public String encodeRedirectUrl(String url) {
+			return super.encodeRedirectUrl(rewrite(url));
+		}
+
+		/**
+		 * Gets the content, encoded in the character encoding of the response when written as characters.
+		 */
+		private byte[] getContent() {
+			if(writer != null) {
+				writer.flush();
+				ByteBuffer encoded = Charset.forName(characterEncoding).encode(CharBuffer.wrap(chars.toCharArray()));
+				byte[] content = new byte[encoded.remaining()];
+				encoded.get(content);
+				return content;
+			}
+			return bytes.toByteArray();
+		}
+
+		@Override
+		public int getStatus() {
+			return status;
+		}
+
+		@Override
+		public void setStatus(int sc) {
+			status = sc;
+		}
+
+		@Override
+		@Deprecated
+		public void setStatus(int sc, String sm) {
+			status = sc;
+		}
+
+		@Override
+		public void sendError(int sc) {
+			status = sc;
+		}
+
+		@Override
+		public void sendError(int sc, String msg) {
+			status = sc;
+		}
+
+		@Override
+		public void sendRedirect(String location) {
+			status = SC_FOUND;
+		}
+
+		@Override
+		public boolean containsHeader(String name) {
+			return false;
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return null;
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			// Headers are not exported
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			// Headers are not exported
+		}
+
+		@Override
+		public void setDateHeader(String name, long date) {
+			// Headers are not exported
+		}
+
+		@Override
+		public void addDateHeader(String name, long date) {
+			// Headers are not exported
+		}
+
+		@Override
+		public void setIntHeader(String name, int value) {
+			// Headers are not exported
+		}
+
+		@Override
+		public void addIntHeader(String name, int value) {
+			// Headers are not exported
+		}
+
+		@Override
+		public void addCookie(Cookie cookie) {
+			// Cookies are not exported
+		}
+
+		@Override
+		public void setContentLength(int len) {
+			// Determined from content
+		}
+
+		@Override
+		public void setContentLengthLong(long len) {
+			// Determined from content
+		}
+
+		@Override
+		public String getContentType() {
+			return contentType;
+		}
+
+		@Override
+		public void setContentType(String type) {
+			contentType = type;
+			if(type != null) {
+				int pos = type.toLowerCase(Locale.ROOT).indexOf("charset=");
+				if(pos != -1) {
+					String charset = type.substring(pos + "charset=".length());
+					int end = charset.indexOf(';');
+					if(end != -1) charset = charset.substring(0, end);
+					characterEncoding = charset.trim();
+				}
+			}
+		}
+
+		@Override
+		public String getCharacterEncoding() {
+			return characterEncoding;
+		}
+
+		@Override
+		public void setCharacterEncoding(String charset) {
+			if(charset != null) characterEncoding = charset;
+		}
+
+		@Override
+		public void setLocale(Locale loc) {
+			// Not exported
+		}
+
+		@Override
+		public void setBufferSize(int size) {
+			// Fully buffered
+		}
+
+		@Override
+		public PrintWriter getWriter() {
+			if(out != null) throw new IllegalStateException("getOutputStream() already called");
+			if(writer == null) {
+				chars = new CharArrayWriter();
+				writer = new PrintWriter(chars);
+			}
+			return writer;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			if(writer != null) throw new IllegalStateException("getWriter() already called");
+			if(out == null) {
+				out = new ServletOutputStream() {
+					@Override
+					public boolean isReady() {
+						return true;
+					}
+
+					@Override
+					public void setWriteListener(WriteListener writeListener) {
+						throw new IllegalStateException("Exported pages are not written asynchronously");
+					}
+
+					@Override
+					public void write(int b) {
+						bytes.write(b);
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) {
+						bytes.write(b, off, len);
+					}
+				};
+			}
+			return out;
+		}
+
+		@Override
+		public void flushBuffer() {
+			// Fully buffered
+		}
+
+		@Override
+		public boolean isCommitted() {
+			// Nothing is sent
+			return false;
+		}
+
+		@Override
+		public void resetBuffer() {
+			bytes.reset();
+			if(writer != null) {
+				writer.flush();
+				chars.reset();
+			}
+		}
+
+		@Override
+		public void reset() {
+			resetBuffer();
+			status = SC_OK;
+			contentType = null;
+		}
+	}
+
+	/**
+	 * Make no instances.
+	 */
+	private Exporter() {
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import com.aoapps.collections.AoCollections;
+import com.aoapps.encoding.Doctype;
+import com.aoapps.encoding.Serialization;
+import com.aoapps.encoding.servlet.DoctypeEE;
+import com.aoapps.encoding.servlet.SerializationEE;
+import com.aoapps.html.servlet.DocumentEE;
+import com.aoapps.html.servlet.FlowContent;
+import com.semanticcms.core.model.PageRef;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.jsp.SkipPageException;
+
+/**
+ * Caches the output of expensive regions of a view, such as generated tables and cross-reference lists,
+ * whose output depends only on a few pages.
+ * Fragments are cached separately for each {@link Serialization} and {@link Doctype}.
+ * <p>
+ * Fragments are shared between requests for up to the {@linkplain HtmlRenderer#getCacheMaxAge(javax.servlet.http.HttpServletRequest) maximum cache age}
+ * and are discarded when any of their pages are {@linkplain HtmlRenderer#invalidate(com.semanticcms.core.model.PageRef) invalidated}.
+ * Fragments are not cached within combined views, since their ids depend on the {@link PageIndex}.
+ * Nor are they cached when response encoding changes any of their URLs, such as adding the session id.
+ * </p>
+ */
+final public class FragmentCache {
+
+	/**
+	 * Writes the content of a fragment.
+	 */
+	@FunctionalInterface
+	public static interface FragmentBody {
+		void doFragment(DocumentEE document) throws ServletException, IOException, SkipPageException;
+	}
+
+	/**
+	 * The key of a cached fragment.
+	 */
+	static final class Key {
+
+		private final String name;
+		private final Serialization serialization;
+		private final Doctype doctype;
+		private final Set<PageRef> dependencies;
+		private final Map<String, ?> params;
+
+		private Key(String name, Serialization serialization, Doctype doctype, Set<PageRef> dependencies, Map<String, ?> params) {
+			this.name = name;
+			this.serialization = serialization;
+			this.doctype = doctype;
+			this.dependencies = dependencies;
+			this.params = params;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Key)) return false;
+			Key other = (Key)obj;
+			return
+				name.equals(other.name)
+				&& serialization == other.serialization
+				&& doctype == other.doctype
+				&& dependencies.equals(other.dependencies)
+				&& params.equals(other.params);
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = name.hashCode();
+			hash = hash * 31 + serialization.hashCode();
+			hash = hash * 31 + doctype.hashCode();
+			hash = hash * 31 + dependencies.hashCode();
+			hash = hash * 31 + params.hashCode();
+			return hash;
+		}
+	}
+
+	/**
+	 * The cached output of a fragment.
+	 */
+	static final class Fragment {
+
+		private final String html;
+
+		/**
+		 * The pages captured while writing the fragment, or {@code null} when not
+		 * {@linkplain ExportDependencies#isRecording(javax.servlet.ServletRequest) recorded}.
+		 */
+		private final Set<PageRef> captured;
+
+		private Fragment(String html, Set<PageRef> captured) {
+			this.html = html;
+			this.captured = captured;
+		}
+	}
+
+	/**
+	 * Writes a fragment, replaying its cached output when available.
+	 * While {@linkplain ExportDependencies#isRecording(javax.servlet.ServletRequest) recording export dependencies},
+	 * the pages captured when the fragment was written are recorded on each replay.
+	 *
+	 * @param  name          the name of the fragment, unique within the application, such as prefixed by the view name
+	 * @param  dependencies  the pages the output depends on
+	 * @param  params        any other values the output depends on, such as view parameters, or {@code null} for none
+	 * @param  body          writes the fragment, always called when not cached
+	 */
+	public static <__ extends FlowContent<__>> void doFragment(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		__ flow,
+		String name,
+		Collection<? extends PageRef> dependencies,
+		Map<String, ?> params,
+		FragmentBody body
+	) throws ServletException, IOException, SkipPageException {
+		HtmlRenderer htmlRenderer = HtmlRenderer.getInstance(servletContext);
+		long maxAge = (
+			PageIndex.getCurrentPageIndex(request) == null
+			&& URLEncodingTracker.isShareable(request)
+		) ? htmlRenderer.getCacheMaxAge(request) : 0;
+		ExportDependencies.addDependencies(request, dependencies);
+		if(maxAge <= 0) {
+			// Not cached, write directly
+			body.doFragment(flow.getDocument());
+			return;
+		}
+		Key key = new Key(
+			name,
+			SerializationEE.get(servletContext, request),
+			DoctypeEE.get(servletContext, request),
+			AoCollections.unmodifiableCopySet(dependencies),
+			params == null ? Collections.emptyMap() : AoCollections.unmodifiableCopyMap(params)
+		);
+		boolean recording = ExportDependencies.isRecording(request);
+		Fragment fragment = htmlRenderer.fragmentCache.get(key, maxAge);
+		// Fragments cached without recording must be re-written to learn their dependencies
+		if(fragment != null && recording && fragment.captured == null) fragment = null;
+		if(fragment == null) {
+			StringWriter out = new StringWriter();
+			URLEncodingTracker tracker = new URLEncodingTracker(response);
+			Set<PageRef> captured;
+			if(recording) {
+				ExportDependencies fragmentDependencies = new ExportDependencies();
+				ExportDependencies outer = fragmentDependencies.startNested(request);
+				try {
+					body.doFragment(new DocumentEE(servletContext, request, tracker, out));
+				} finally {
+					fragmentDependencies.endNested(request, outer);
+				}
+				captured = AoCollections.unmodifiableCopySet(fragmentDependencies.getPageRefs());
+			} else {
+				body.doFragment(new DocumentEE(servletContext, request, tracker, out));
+				captured = null;
+			}
+			fragment = new Fragment(out.toString(), captured);
+			// Output with response-encoded URLs, such as containing the session id, is specific to this request
+			if(!tracker.isChanged()) {
+				Set<PageRef> cacheDependencies;
+				if(captured == null) {
+					cacheDependencies = key.dependencies;
+				} else {
+					cacheDependencies = new HashSet<>(key.dependencies);
+					cacheDependencies.addAll(captured);
+				}
+				htmlRenderer.fragmentCache.put(key, fragment, maxAge, cacheDependencies);
+			}
+		} else if(recording) {
+			ExportDependencies.addDependencies(request, fragment.captured);
+		}
+		flow.unsafe(fragment.html);
+	}
+
+	/**
+	 * Make no instances.
+	 */
+	private FragmentCache() {
+	}
+}
@@ -32,12 +32,12 @@ public class Headers {
 	/**
 	 * A client may include this header to indicate it is in export mode.
 	 */
-	private static final String EXPORTING_HEADER = "X-com-semanticcms-core-renderer-html-exporting";
+	static final String EXPORTING_HEADER = "X-com-semanticcms-core-renderer-html-exporting";
 
 	/**
 	 * The value to pass in the header.
 	 */
-	private static final String EXPORTING_HEADER_VALUE = "true";
+	static final String EXPORTING_HEADER_VALUE = "true";
 
 	/**
 	 * Checks if the request is for an export.
@@ -22,27 +22,45 @@
  */
 package com.semanticcms.core.renderer.html;
 
+import com.aoapps.collections.AoCollections;
 import com.aoapps.encoding.MediaType;
+import com.aoapps.web.resources.registry.Registry;
 import com.aoapps.web.resources.servlet.RegistryEE;
+import com.semanticcms.core.controller.AuthorUtils;
+import com.semanticcms.core.controller.CopyrightUtils;
 import com.semanticcms.core.controller.SemanticCMS;
+import com.semanticcms.core.model.Author;
+import com.semanticcms.core.model.Copyright;
 import com.semanticcms.core.model.Link;
 import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
 import com.semanticcms.core.pages.CaptureLevel;
 import com.semanticcms.core.renderer.Renderer;
 import com.semanticcms.core.renderer.servlet.DefaultServletPageRenderer;
 import com.semanticcms.core.renderer.servlet.ServletPageRenderer;
 import java.io.IOException;
 import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
@@ -51,6 +69,7 @@ import javax.servlet.annotation.WebListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.jsp.SkipPageException;
+import org.joda.time.ReadableInstant;
 
 /**
  * TODO: Consider custom EL resolver for this variable: http://stackoverflow.com/questions/5016965/how-to-add-a-custom-variableresolver-in-pure-jsp
@@ -68,6 +87,7 @@ public class HtmlRenderer implements Renderer {
 		public void contextInitialized(ServletContextEvent event) {
 			ServletContext servletContext = event.getServletContext();
 			instance = getInstance(servletContext);
+			instance.init();
 			SemanticCMS.getInstance(servletContext).addRenderer("", instance);
 			// TODO: Register an export version at *.html, which redirects to not .html when not in export mode
 		}
@@ -101,12 +121,36 @@ public class HtmlRenderer implements Renderer {
 
 	protected HtmlRenderer(ServletContext servletContext) {
 		this.servletContext = servletContext;
+		this.componentStatistics = new ComponentStatistics(
+			Boolean.parseBoolean(servletContext.getInitParameter(COMPONENT_STATISTICS_INIT_PARAM))
+		);
+	}
+
+	/**
+	 * Called when the context is starting.
+	 */
+	protected void init() {
+		registerComponentStatistics();
 	}
 
 	/**
 	 * Called when the context is shutting down.
 	 */
 	protected void destroy() {
+		unregisterComponentStatistics();
+		// Restores allocation measurement
+		componentStatistics.setEnabled(false);
+		invalidateAll();
+		ExecutorService executor = asyncExecutor;
+		if(executor != null) {
+			executor.shutdown();
+			asyncExecutor = null;
+		}
+		executor = prepareExecutor;
+		if(executor != null) {
+			executor.shutdown();
+			prepareExecutor = null;
+		}
 	}
 	// </editor-fold>
 
@@ -126,6 +170,11 @@ public class HtmlRenderer implements Renderer {
 	 */
 	private final Map<String, View> viewsByName = new LinkedHashMap<>();
 
+	/**
+	 * Unmodifiable wrapper of {@link #viewsByName}, created once since looked-up for every link.
+	 */
+	private final Map<String, View> unmodifiableViewsByName = Collections.unmodifiableMap(viewsByName);
+
 	private static final Set<View.Group> viewGroups = Collections.unmodifiableSet(EnumSet.allOf(View.Group.class));
 
 	/**
@@ -138,8 +187,9 @@ public class HtmlRenderer implements Renderer {
 	/**
 	 * Gets the views in order added.
 	 */
+	@SuppressWarnings("ReturnOfCollectionOrArrayField") // Returning unmodifiable
 	public Map<String, View> getViewsByName() {
-		return Collections.unmodifiableMap(viewsByName);
+		return unmodifiableViewsByName;
 	}
 
 	/**
@@ -196,6 +246,136 @@ public class HtmlRenderer implements Renderer {
 				components,
 				(o1, o2) -> o1.getClass().getName().compareTo(o2.getClass().getName())
 			);
+			componentIndex = new ComponentIndex(components);
+		}
+	}
+
+	/**
+	 * The components applicable to each position, indexed by {@link ComponentPosition#ordinal()},
+	 * in the same order as {@link #getComponents()}.
+	 * Replaced whenever a component is registered.
+	 */
+	private static final class ComponentIndex {
+
+		private final Component[][] byPosition;
+
+		/**
+		 * The components further limited to each view, by view name, as views are rendered.
+		 */
+		private final ConcurrentMap<String, Component[][]> byView = new ConcurrentHashMap<>();
+
+		private ComponentIndex(List<Component> components) {
+			ComponentPosition[] positions = ComponentPosition.values();
+			byPosition = new Component[positions.length][];
+			for(ComponentPosition position : positions) {
+				List<Component> applicable = new ArrayList<>(components.size());
+				for(Component component : components) {
+					if(component.isApplicable(position)) applicable.add(component);
+				}
+				byPosition[position.ordinal()] = applicable.toArray(new Component[applicable.size()]);
+			}
+		}
+
+		private Component[][] getByView(View view) {
+			return byView.computeIfAbsent(
+				view.getName(),
+				name -> {
+					Component[][] filtered = new Component[byPosition.length][];
+					for(int i = 0; i < byPosition.length; i++) {
+						List<Component> applicable = new ArrayList<>(byPosition[i].length);
+						for(Component component : byPosition[i]) {
+							if(component.isApplicable(view)) applicable.add(component);
+						}
+						filtered[i] = applicable.toArray(new Component[applicable.size()]);
+					}
+					return filtered;
+				}
+			);
+		}
+	}
+
+	private volatile ComponentIndex componentIndex = new ComponentIndex(Collections.emptyList());
+
+	/**
+	 * Gets the components applicable to the given view and position, in the same order as {@link #getComponents()}.
+	 * The returned array must not be modified.
+	 *
+	 * @param  view  The view that is currently being rendered.  May be {@code null} during error handling,
+	 *               in which case components are only limited by position.
+	 *
+	 * @see  Component#isApplicable(com.semanticcms.core.renderer.html.ComponentPosition)
+	 * @see  Component#isApplicable(com.semanticcms.core.renderer.html.View)
+	 */
+	Component[] getComponents(View view, ComponentPosition position) {
+		ComponentIndex index = componentIndex;
+		Component[][] byPosition = (view == null) ? index.byPosition : index.getByView(view);
+		return byPosition[position.ordinal()];
+	}
+
+	/**
+	 * The executor for {@linkplain PreparedComponent preparing components}, separate from {@link #asyncExecutor}
+	 * so a rendering thread never waits on tasks queued behind other rendering threads.
+	 */
+	private volatile ExecutorService prepareExecutor;
+
+	/**
+	 * Gets the executor for preparing components, creating it when first needed.
+	 */
+	ExecutorService getPrepareExecutor() {
+		ExecutorService executor = prepareExecutor;
+		if(executor == null) {
+			synchronized(this) {
+				executor = prepareExecutor;
+				if(executor == null) prepareExecutor = executor = AsyncRendering.newExecutor(ComponentPreparation.class.getName());
+			}
+		}
+		return executor;
+	}
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Component Statistics">
+	/**
+	 * The context-param that enables {@linkplain ComponentStatistics component statistics} from startup when set to {@code true}.
+	 * Defaults to {@code false}.  Statistics may also be enabled at runtime through {@link ComponentStatisticsMXBean}.
+	 */
+	public static final String COMPONENT_STATISTICS_INIT_PARAM = HtmlRenderer.class.getName() + ".componentStatistics";
+
+	private final ComponentStatistics componentStatistics;
+
+	private ObjectName componentStatisticsName;
+
+	/**
+	 * Gets the wall time and allocation statistics of components.
+	 */
+	public ComponentStatistics getComponentStatistics() {
+		return componentStatistics;
+	}
+
+	private synchronized void registerComponentStatistics() {
+		if(componentStatisticsName == null) {
+			try {
+				ObjectName name = new ObjectName(
+					"com.semanticcms.core.renderer.html:type=ComponentStatistics,context="
+					+ ObjectName.quote(servletContext.getContextPath())
+				);
+				ManagementFactory.getPlatformMBeanServer().registerMBean(componentStatistics, name);
+				componentStatisticsName = name;
+			} catch(JMException | SecurityException e) {
+				// Statistics are still available through getComponentStatistics()
+				servletContext.log("Unable to register component statistics", e);
+			}
+		}
+	}
+
+	private synchronized void unregisterComponentStatistics() {
+		ObjectName name = componentStatisticsName;
+		if(name != null) {
+			componentStatisticsName = null;
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			} catch(JMException | SecurityException e) {
+				servletContext.log("Unable to unregister component statistics", e);
+			}
 		}
 	}
 	// </editor-fold>
@@ -253,6 +433,46 @@ public class HtmlRenderer implements Renderer {
 		}
 	}
 
+	private volatile ScriptBundles scriptBundles;
+
+	/**
+	 * Gets the bundles of the current scripts, building them when first needed or when the scripts have changed.
+	 */
+	private ScriptBundles getScriptBundles() throws IOException {
+		int version = getResourcesVersion();
+		ScriptBundles bundles = scriptBundles;
+		if(bundles == null || bundles.getResourcesVersion() != version) {
+			Map<String, String> scriptsCopy;
+			synchronized(scripts) {
+				scriptsCopy = new LinkedHashMap<>(scripts);
+			}
+			bundles = new ScriptBundles(servletContext, version, scriptsCopy);
+			scriptBundles = bundles;
+		}
+		return bundles;
+	}
+
+	/**
+	 * Gets the scripts, in the order added, with each run of consecutive scripts that are resources of
+	 * this application concatenated into a content-hashed bundle.  Themes should write these instead of
+	 * {@link #getScripts()} for fewer requests per page and long-term caching.
+	 *
+	 * @see  ScriptBundleServlet
+	 */
+	// TODO: RegistryEE
+	public Map<String, String> getBundledScripts() throws IOException {
+		return getScriptBundles().getBundledScripts();
+	}
+
+	/**
+	 * Gets the content of a current script bundle.
+	 *
+	 * @return  the content or {@code null} when not a current bundle
+	 */
+	byte[] getScriptBundle(String name) throws IOException {
+		return getScriptBundles().getBundle(name);
+	}
+
 	/**
 	 * Registers a new script.  When a script is added multiple times,
 	 * the src must be consistent between adds.  Also, a src may not be
@@ -282,6 +502,7 @@ public class HtmlRenderer implements Renderer {
 					throw new IllegalArgumentException("Non-unique global script src: " + src);
 				}
 				if(scripts.put(name, src) != null) throw new AssertionError();
+				resourcesVersion.incrementAndGet();
 			}
 		}
 	}
@@ -311,10 +532,26 @@ public class HtmlRenderer implements Renderer {
 	public void addHeadInclude(String headInclude) throws IllegalStateException {
 		synchronized(headIncludes) {
 			if(!headIncludes.add(headInclude)) throw new IllegalStateException("headInclude already registered: " + headInclude);
+			resourcesVersion.incrementAndGet();
 		}
 	}
 	// </editor-fold>
 
+	// <editor-fold defaultstate="collapsed" desc="Resources Version">
+	private final AtomicInteger resourcesVersion = new AtomicInteger();
+
+	/**
+	 * Gets the version of the application-wide resources, such as {@linkplain #getScripts() scripts}
+	 * and {@linkplain #getHeadIncludes() head includes}.  This changes whenever these resources change,
+	 * and is used to know when output derived from them must be regenerated.
+	 *
+	 * @see  Theme#doStaticSegment(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.aoapps.html.any.AnyDocument, java.lang.String, com.semanticcms.core.renderer.html.Theme.StaticSegment)
+	 */
+	public int getResourcesVersion() {
+		return resourcesVersion.get();
+	}
+	// </editor-fold>
+
 	// <editor-fold defaultstate="collapsed" desc="Links to Elements">
 
 	/**
@@ -471,6 +708,563 @@ public class HtmlRenderer implements Renderer {
 	}
 	// </editor-fold>
 
+	// <editor-fold defaultstate="collapsed" desc="Caches">
+	/**
+	 * The context-param that sets the maximum age, in seconds, of values cached across requests.
+	 * When unset or {@code 0}, values are only cached across requests while {@linkplain Headers#isExporting(javax.servlet.http.HttpServletRequest) exporting}.
+	 */
+	public static final String CACHE_MAX_AGE_INIT_PARAM = HtmlRenderer.class.getName() + ".cacheMaxAge";
+
+	/**
+	 * The maximum age, in milliseconds, of values cached across requests while exporting.
+	 */
+	private static final long EXPORT_CACHE_MAX_AGE = 60L * 1000L;
+
+	/**
+	 * The caches that are invalidated together.
+	 */
+	private final List<ApplicationCache<?, ?>> caches = new CopyOnWriteArrayList<>();
+
+	private volatile Long cacheMaxAge;
+
+	/**
+	 * Gets the maximum age, in milliseconds, of values cached across requests.
+	 *
+	 * @return  the maximum age or {@code 0} when values are not to be cached across requests
+	 *
+	 * @see  #CACHE_MAX_AGE_INIT_PARAM
+	 */
+	public long getCacheMaxAge(HttpServletRequest request) {
+		Long maxAge = cacheMaxAge;
+		if(maxAge == null) {
+			String param = servletContext.getInitParameter(CACHE_MAX_AGE_INIT_PARAM);
+			param = param == null ? null : param.trim();
+			maxAge = (param == null || param.isEmpty()) ? 0 : (Long.parseLong(param) * 1000L);
+			if(maxAge < 0) throw new IllegalArgumentException(CACHE_MAX_AGE_INIT_PARAM + " may not be negative: " + param);
+			cacheMaxAge = maxAge;
+		}
+		if(maxAge == 0 && Headers.isExporting(request)) return EXPORT_CACHE_MAX_AGE;
+		return maxAge;
+	}
+
+	/**
+	 * Creates a new cache that is invalidated along with all other caches of this renderer.
+	 */
+	<K, V> ApplicationCache<K, V> newCache() {
+		ApplicationCache<K, V> cache = new ApplicationCache<>();
+		caches.add(cache);
+		return cache;
+	}
+
+	/**
+	 * Links resolved by {@link LinkRenderer}, shared between requests.
+	 */
+	final ApplicationCache<LinkRenderer.CacheKey, LinkRenderer.Resolved> linkCache = newCache();
+
+	/**
+	 * The metadata of each page, as indexed when captured.
+	 */
+	private final ApplicationCache<PageRef, PageMetadata> pageMetadataCache = newCache();
+
+	/**
+	 * The targets of links to elements on each page, as learned when the page is rendered,
+	 * so they may be captured in advance at the level needed for elements.
+	 */
+	private final ApplicationCache<PageRef, Set<PageRef>> elementLinkTargetsCache = newCache();
+
+	/**
+	 * Remembers that a page links to elements in the given target page.  Does nothing when not caching.
+	 */
+	void addElementLinkTarget(HttpServletRequest request, PageRef pageRef, PageRef target) {
+		long maxAge = getCacheMaxAge(request);
+		if(maxAge <= 0) return;
+		Set<PageRef> targets = elementLinkTargetsCache.get(pageRef, maxAge);
+		if(targets == null) {
+			targets = ConcurrentHashMap.newKeySet();
+			elementLinkTargetsCache.put(pageRef, targets, maxAge, Collections.singleton(pageRef));
+		}
+		targets.add(target);
+	}
+
+	/**
+	 * Gets the targets of links to elements on the given page, as learned when the page was previously rendered.
+	 *
+	 * @return  the targets or an empty set when unknown or not caching
+	 */
+	Set<PageRef> getElementLinkTargets(HttpServletRequest request, PageRef pageRef) {
+		Set<PageRef> targets = elementLinkTargetsCache.get(pageRef, getCacheMaxAge(request));
+		return targets == null ? Collections.emptySet() : targets;
+	}
+
+	/**
+	 * The {@link PageIndex} of each root page, shared between requests.
+	 */
+	final ApplicationCache<PageRef, PageIndex> pageIndexCache = newCache();
+
+	/**
+	 * The request attribute holding the metadata indexed within the request, used when not
+	 * {@linkplain #getCacheMaxAge(javax.servlet.http.HttpServletRequest) caching}.
+	 */
+	private static final String PAGE_METADATA_REQUEST_ATTRIBUTE = HtmlRenderer.class.getName() + ".pageMetadata";
+
+	/**
+	 * Gets the metadata indexed within the request, creating it when first needed.
+	 */
+	private static Map<PageRef, PageMetadata> getRequestPageMetadata(HttpServletRequest request) {
+		@SuppressWarnings("unchecked")
+		Map<PageRef, PageMetadata> requestPageMetadata = (Map<PageRef, PageMetadata>)request.getAttribute(PAGE_METADATA_REQUEST_ATTRIBUTE);
+		if(requestPageMetadata == null) {
+			// Concurrent since may be shared by concurrent subrequests
+			requestPageMetadata = new ConcurrentHashMap<>();
+			request.setAttribute(PAGE_METADATA_REQUEST_ATTRIBUTE, requestPageMetadata);
+		}
+		return requestPageMetadata;
+	}
+
+	/**
+	 * Gets the metadata indexed for the given page.
+	 * When not {@linkplain #getCacheMaxAge(javax.servlet.http.HttpServletRequest) caching}, only metadata
+	 * indexed within the current request is available, such as by {@link LinkRenderer#prefetchLinks(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.PageRef)}.
+	 *
+	 * @return  the metadata or {@code null} when not indexed or expired
+	 *
+	 * @see  #getCacheMaxAge(javax.servlet.http.HttpServletRequest)
+	 */
+	public PageMetadata getPageMetadata(HttpServletRequest request, PageRef pageRef) {
+		ExportDependencies.addDependency(request, pageRef);
+		long maxAge = getCacheMaxAge(request);
+		if(maxAge <= 0) return getRequestPageMetadata(request).get(pageRef);
+		return pageMetadataCache.get(pageRef, maxAge);
+	}
+
+	/**
+	 * Indexes the metadata of a newly captured page.
+	 * Metadata is not replaced by metadata of the same or lower capture level until expired.
+	 * When not {@linkplain #getCacheMaxAge(javax.servlet.http.HttpServletRequest) caching}, the metadata is only
+	 * indexed for the current request.
+	 *
+	 * @param  captureLevel  the level the page was captured at
+	 *
+	 * @return  the metadata now indexed for the page
+	 */
+	PageMetadata indexPage(HttpServletRequest request, Page page, CaptureLevel captureLevel) {
+		PageRef pageRef = page.getPageRef();
+		ExportDependencies.addDependency(request, pageRef);
+		long maxAge = getCacheMaxAge(request);
+		if(maxAge <= 0) {
+			Map<PageRef, PageMetadata> requestPageMetadata = getRequestPageMetadata(request);
+			PageMetadata existing = requestPageMetadata.get(pageRef);
+			if(
+				existing != null
+				&& existing.getCaptureLevel().compareTo(captureLevel) >= 0
+			) {
+				return existing;
+			}
+			PageMetadata metadata = new PageMetadata(this, page, captureLevel);
+			requestPageMetadata.put(pageRef, metadata);
+			return metadata;
+		}
+		PageMetadata existing = pageMetadataCache.get(pageRef, maxAge);
+		if(
+			existing != null
+			&& existing.getCaptureLevel().compareTo(captureLevel) >= 0
+		) {
+			return existing;
+		}
+		PageMetadata metadata = new PageMetadata(this, page, captureLevel);
+		pageMetadataCache.put(pageRef, metadata, maxAge, Collections.singleton(pageRef));
+		return metadata;
+	}
+
+	/**
+	 * The inherited copyright of each page, shared between requests.
+	 * Empty when the page has no copyright.
+	 */
+	private final ApplicationCache<PageRef, Optional<Copyright>> copyrightCache = newCache();
+
+	/**
+	 * Finds the copyright of a page, inherited through its parents when not set on the page.
+	 * The result is shared between requests while {@linkplain #getCacheMaxAge(javax.servlet.http.HttpServletRequest) caching}
+	 * and is discarded when any page is {@linkplain #invalidate(com.semanticcms.core.model.PageRef) invalidated},
+	 * since it may be inherited from any ancestor.
+	 *
+	 * @see  CopyrightUtils#findCopyright(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)
+	 */
+	public Copyright findCopyright(
+		HttpServletRequest request,
+		HttpServletResponse response,
+		Page page
+	) throws ServletException, IOException {
+		long maxAge = getCacheMaxAge(request);
+		PageRef pageRef = page.getPageRef();
+		Optional<Copyright> copyright = copyrightCache.get(pageRef, maxAge);
+		if(copyright == null) {
+			copyright = Optional.ofNullable(CopyrightUtils.findCopyright(servletContext, request, response, page));
+			copyrightCache.put(pageRef, copyright, maxAge, null);
+		}
+		return copyright.orElse(null);
+	}
+
+	/**
+	 * The inherited authors of each page, shared between requests.
+	 */
+	private final ApplicationCache<PageRef, Set<Author>> authorsCache = newCache();
+
+	/**
+	 * Finds the authors of a page, inherited through its parents when not set on the page.
+	 * The result is shared between requests while {@linkplain #getCacheMaxAge(javax.servlet.http.HttpServletRequest) caching}
+	 * and is discarded when any page is {@linkplain #invalidate(com.semanticcms.core.model.PageRef) invalidated},
+	 * since it may be inherited from any ancestor.
+	 *
+	 * @see  AuthorUtils#findAuthors(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)
+	 */
+	public Set<Author> findAuthors(
+		HttpServletRequest request,
+		HttpServletResponse response,
+		Page page
+	) throws ServletException, IOException {
+		long maxAge = getCacheMaxAge(request);
+		PageRef pageRef = page.getPageRef();
+		Set<Author> authors = authorsCache.get(pageRef, maxAge);
+		if(authors == null) {
+			authors = AoCollections.unmodifiableCopySet(AuthorUtils.findAuthors(servletContext, request, response, page));
+			authorsCache.put(pageRef, authors, maxAge, null);
+		}
+		return authors;
+	}
+
+	/**
+	 * The {@linkplain View#isApplicableCacheable() cacheable} applicability of views to each page, by view name.
+	 */
+	private final ApplicationCache<PageRef, ConcurrentMap<String, Boolean>> applicableCache = newCache();
+
+	/**
+	 * Checks if a view is applicable to each of the given pages.
+	 * When {@linkplain View#isApplicableCacheable() cacheable}, results are shared between requests while
+	 * {@linkplain #getCacheMaxAge(javax.servlet.http.HttpServletRequest) caching}, and only the pages not
+	 * already known are checked.
+	 *
+	 * @return  the bit at each index is set when applicable to the page at the same index
+	 *
+	 * @see  View#isApplicable(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, java.util.List)
+	 */
+	public BitSet getApplicable(
+		HttpServletRequest request,
+		HttpServletResponse response,
+		View view,
+		List<? extends Page> pages
+	) throws ServletException, IOException {
+		long maxAge = view.isApplicableCacheable() ? getCacheMaxAge(request) : 0;
+		if(maxAge <= 0) return view.isApplicable(servletContext, request, response, pages);
+		String viewName = view.getName();
+		int size = pages.size();
+		BitSet applicable = new BitSet(size);
+		List<Page> unknownPages = new ArrayList<>();
+		List<Integer> unknownIndexes = new ArrayList<>();
+		for(int i = 0; i < size; i++) {
+			Page page = pages.get(i);
+			ConcurrentMap<String, Boolean> byView = applicableCache.get(page.getPageRef(), maxAge);
+			Boolean known = (byView == null) ? null : byView.get(viewName);
+			if(known == null) {
+				unknownPages.add(page);
+				unknownIndexes.add(i);
+			} else if(known) {
+				applicable.set(i);
+			}
+		}
+		if(!unknownPages.isEmpty()) {
+			BitSet checked = view.isApplicable(servletContext, request, response, unknownPages);
+			for(int i = 0, unknownSize = unknownPages.size(); i < unknownSize; i++) {
+				boolean isApplicable = checked.get(i);
+				if(isApplicable) applicable.set(unknownIndexes.get(i));
+				PageRef pageRef = unknownPages.get(i).getPageRef();
+				ConcurrentMap<String, Boolean> byView = applicableCache.get(pageRef, maxAge);
+				if(byView == null) {
+					byView = new ConcurrentHashMap<>();
+					applicableCache.put(pageRef, byView, maxAge, Collections.singleton(pageRef));
+				}
+				byView.put(viewName, isApplicable);
+			}
+		}
+		return applicable;
+	}
+
+	/**
+	 * Checks which of the given views are applicable to a page.
+	 *
+	 * @return  the bit at each index is set when the view at the same index is applicable
+	 *
+	 * @see  #getApplicable(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.renderer.html.View, java.util.List)
+	 */
+	public BitSet getApplicableViews(
+		HttpServletRequest request,
+		HttpServletResponse response,
+		List<? extends View> views,
+		Page page
+	) throws ServletException, IOException {
+		List<Page> pages = Collections.singletonList(page);
+		int size = views.size();
+		BitSet applicable = new BitSet(size);
+		for(int i = 0; i < size; i++) {
+			if(getApplicable(request, response, views.get(i), pages).get(0)) applicable.set(i);
+		}
+		return applicable;
+	}
+
+	/**
+	 * The output of view fragments, shared between requests.
+	 *
+	 * @see  FragmentCache
+	 */
+	final ApplicationCache<FragmentCache.Key, FragmentCache.Fragment> fragmentCache = newCache();
+
+	/**
+	 * Key for values cached by view and page.
+	 */
+	static final class ViewPageKey {
+
+		private final String viewName;
+		private final PageRef pageRef;
+
+		ViewPageKey(String viewName, PageRef pageRef) {
+			this.viewName = viewName;
+			this.pageRef = pageRef;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof ViewPageKey)) return false;
+			ViewPageKey other = (ViewPageKey)obj;
+			return viewName.equals(other.viewName) && pageRef.equals(other.pageRef);
+		}
+
+		@Override
+		public int hashCode() {
+			return viewName.hashCode() * 31 + pageRef.hashCode();
+		}
+	}
+
+	/**
+	 * The index of effective last modified times, by view and page.
+	 * Empty when unknown or not applicable.
+	 */
+	private final ApplicationCache<ViewPageKey, Optional<ReadableInstant>> lastModifiedCache = newCache();
+
+	/**
+	 * The URI-encoded canonical servlet path of each page by view, before response encoding.
+	 *
+	 * @see  View#getCanonicalUrl(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)
+	 */
+	final ApplicationCache<ViewPageKey, String> canonicalServletPathCache = newCache();
+
+	/**
+	 * The context-param that enables answering conditional requests with {@code 304 Not Modified}, when set to {@code true}.
+	 * Defaults to {@code false}.
+	 * <p>
+	 * The validator is only the {@linkplain #getLastModified(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.renderer.html.View, com.semanticcms.core.model.Page) effective last modified time}
+	 * of the page in its view.  It does not include changes to the theme, navigation, components, copyright,
+	 * or anything else rendered around the page, so clients may keep stale copies until the page itself changes.
+	 * Only enable when this is acceptable.
+	 * </p>
+	 */
+	public static final String CONDITIONAL_REQUESTS_INIT_PARAM = HtmlRenderer.class.getName() + ".conditionalRequests";
+
+	private volatile Boolean conditionalRequests;
+
+	/**
+	 * Checks if conditional requests are answered from the effective last modified time.
+	 *
+	 * @see  #CONDITIONAL_REQUESTS_INIT_PARAM
+	 */
+	public boolean isConditionalRequests() {
+		Boolean enabled = conditionalRequests;
+		if(enabled == null) {
+			conditionalRequests = enabled = Boolean.parseBoolean(servletContext.getInitParameter(CONDITIONAL_REQUESTS_INIT_PARAM));
+		}
+		return enabled;
+	}
+
+	/**
+	 * Gets the effective last modified time of a page in a view, from the index when available.
+	 * Times are added to the index as they are determined and kept while
+	 * {@linkplain #getCacheMaxAge(javax.servlet.http.HttpServletRequest) caching}.
+	 * <p>
+	 * The default view is only removed from the index when the page itself is
+	 * {@linkplain #invalidate(com.semanticcms.core.model.PageRef) invalidated}.
+	 * Other views often summarize child pages, so they are removed when any page is invalidated.
+	 * </p>
+	 *
+	 * @return  The effective last modified time or {@code null} if unknown or not applicable.
+	 *
+	 * @see  View#getLastModified(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)
+	 */
+	public ReadableInstant getLastModified(
+		HttpServletRequest request,
+		HttpServletResponse response,
+		View view,
+		Page page
+	) throws ServletException, IOException {
+		long maxAge = getCacheMaxAge(request);
+		PageRef pageRef = page.getPageRef();
+		ViewPageKey key = new ViewPageKey(view.getName(), pageRef);
+		Optional<ReadableInstant> lastModified = lastModifiedCache.get(key, maxAge);
+		if(lastModified == null) {
+			lastModified = Optional.ofNullable(view.getLastModified(servletContext, request, response, page));
+			lastModifiedCache.put(
+				key,
+				lastModified,
+				maxAge,
+				view.isDefault() ? Collections.singleton(pageRef) : null
+			);
+		}
+		return lastModified.orElse(null);
+	}
+
+	/**
+	 * Discards any cached values derived from the given page.
+	 * This should be called when a page is known to have changed.
+	 */
+	public void invalidate(PageRef pageRef) {
+		for(ApplicationCache<?, ?> cache : caches) {
+			cache.invalidate(pageRef);
+		}
+	}
+
+	/**
+	 * Discards all cached values.
+	 */
+	public void invalidateAll() {
+		for(ApplicationCache<?, ?> cache : caches) {
+			cache.clear();
+		}
+	}
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Static Resources">
+	/**
+	 * The resources configured by {@linkplain Theme#isResourcesStatic() static themes}, by theme and view name.
+	 */
+	private final ConcurrentMap<List<String>, Registry> staticThemeResources = new ConcurrentHashMap<>();
+
+	/**
+	 * The resources configured by {@linkplain View#isResourcesStatic() static views}, by theme and view name.
+	 */
+	private final ConcurrentMap<List<String>, Registry> staticViewResources = new ConcurrentHashMap<>();
+
+	/**
+	 * Configures the resources of the theme and view for a request.  Static configurations are
+	 * only performed once per theme and view, then added to the request from an unchanging snapshot.
+	 *
+	 * @see  Theme#configureResources(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.renderer.html.View, com.semanticcms.core.model.Page, com.aoapps.web.resources.registry.Registry)
+	 * @see  View#configureResources(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.renderer.html.Theme, com.semanticcms.core.model.Page, com.aoapps.web.resources.registry.Registry)
+	 */
+	private void configureResources(
+		HttpServletRequest request,
+		HttpServletResponse response,
+		Theme theme,
+		View view,
+		Page page
+	) {
+		Registry requestRegistry = RegistryEE.Request.get(servletContext, request);
+		List<String> key = Arrays.asList(theme.getName(), view.getName());
+		// Configure the theme resources
+		if(theme.isResourcesStatic()) {
+			Registry snapshot = staticThemeResources.get(key);
+			if(snapshot == null) {
+				snapshot = new Registry();
+				theme.configureResources(servletContext, request, response, view, page, snapshot);
+				staticThemeResources.putIfAbsent(key, snapshot);
+			}
+			requestRegistry.union(snapshot);
+		} else {
+			theme.configureResources(servletContext, request, response, view, page, requestRegistry);
+		}
+		// Configure the view resources
+		if(view.isResourcesStatic()) {
+			Registry snapshot = staticViewResources.get(key);
+			if(snapshot == null) {
+				snapshot = new Registry();
+				view.configureResources(servletContext, request, response, theme, page, snapshot);
+				staticViewResources.putIfAbsent(key, snapshot);
+			}
+			requestRegistry.union(snapshot);
+		} else {
+			view.configureResources(servletContext, request, response, theme, page, requestRegistry);
+		}
+	}
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Asynchronous Rendering">
+	/**
+	 * The context-param that enables rendering pages asynchronously, off the container threads, when set to {@code true}.
+	 * Defaults to {@code false}.
+	 *
+	 * @see  AsyncRendering
+	 */
+	public static final String ASYNC_RENDERING_INIT_PARAM = HtmlRenderer.class.getName() + ".asyncRendering";
+
+	/**
+	 * The context-param that sets the maximum time, in seconds, a page may take to be rendered and sent asynchronously.
+	 * Defaults to {@link #DEFAULT_ASYNC_RENDERING_TIMEOUT}.
+	 */
+	public static final String ASYNC_RENDERING_TIMEOUT_INIT_PARAM = HtmlRenderer.class.getName() + ".asyncRenderingTimeout";
+
+	/**
+	 * The default maximum time, in seconds, a page may take to be rendered and sent asynchronously.
+	 */
+	public static final long DEFAULT_ASYNC_RENDERING_TIMEOUT = 60;
+
+	private volatile Boolean asyncRendering;
+
+	private volatile Long asyncRenderingTimeout;
+
+	private volatile ExecutorService asyncExecutor;
+
+	/**
+	 * Checks if the given request is to be rendered asynchronously.
+	 *
+	 * @see  #ASYNC_RENDERING_INIT_PARAM
+	 */
+	public boolean isAsyncRendering(HttpServletRequest request) {
+		Boolean enabled = asyncRendering;
+		if(enabled == null) {
+			asyncRendering = enabled = Boolean.parseBoolean(servletContext.getInitParameter(ASYNC_RENDERING_INIT_PARAM));
+		}
+		return enabled && AsyncRendering.isSupported(request);
+	}
+
+	/**
+	 * Gets the maximum time, in milliseconds, a page may take to be rendered and sent asynchronously.
+	 *
+	 * @see  #ASYNC_RENDERING_TIMEOUT_INIT_PARAM
+	 */
+	long getAsyncRenderingTimeout() {
+		Long timeout = asyncRenderingTimeout;
+		if(timeout == null) {
+			String param = servletContext.getInitParameter(ASYNC_RENDERING_TIMEOUT_INIT_PARAM);
+			param = param == null ? null : param.trim();
+			long seconds = (param == null || param.isEmpty()) ? DEFAULT_ASYNC_RENDERING_TIMEOUT : Long.parseLong(param);
+			if(seconds <= 0) throw new IllegalArgumentException(ASYNC_RENDERING_TIMEOUT_INIT_PARAM + " must be positive: " + param);
+			asyncRenderingTimeout = timeout = seconds * 1000L;
+		}
+		return timeout;
+	}
+
+	/**
+	 * Gets the executor for asynchronous rendering, creating it when first needed.
+	 */
+	private ExecutorService getAsyncExecutor() {
+		ExecutorService executor = asyncExecutor;
+		if(executor == null) {
+			synchronized(this) {
+				executor = asyncExecutor;
+				if(executor == null) asyncExecutor = executor = AsyncRendering.newExecutor(AsyncRendering.class.getName());
+			}
+		}
+		return executor;
+	}
+	// </editor-fold>
+
 	// <editor-fold defaultstate="collapsed" desc="Renderer">
 
 	@Override
@@ -485,7 +1279,9 @@ public class HtmlRenderer implements Renderer {
 
 			@Override
 			public long getLastModified() throws IOException {
-				// TODO: Per-view last modified
+				// The last modified time depends on the view, which is selected by the request, but there is no request here.
+				// The time of any one view could answer a conditional request for another view with stale content, so
+				// conditional requests are answered from the last modified index in doRenderer, once the view is known.
 				return 0;
 			}
 
@@ -508,8 +1304,20 @@ public class HtmlRenderer implements Renderer {
 				HttpServletResponse response,
 				Writer out // TODO: Pass "out" to theme.doTheme()?
 			) throws IOException, ServletException, SkipPageException {
-				// Resolve the view
 				HtmlRenderer htmlRenderer = HtmlRenderer.getInstance(servletContext);
+				if(htmlRenderer.isAsyncRendering(request)) {
+					AsyncRendering.render(
+						servletContext,
+						htmlRenderer.getAsyncExecutor(),
+						htmlRenderer.getAsyncRenderingTimeout(),
+						request,
+						response,
+						// "out" is not used, and is not valid on the rendering thread
+						(asyncRequest, asyncResponse) -> doRenderer(page, asyncRequest, asyncResponse, null)
+					);
+					return;
+				}
+				// Resolve the view
 				View view;
 				{
 					String viewName = request.getParameter(VIEW_PARAM);
@@ -527,6 +1335,38 @@ public class HtmlRenderer implements Renderer {
 					}
 				}
 
+				// Answer conditional requests from the last modified index, when enabled
+				// TODO: Move to getLastModified() once it has access to the request
+				String method = request.getMethod();
+				if(
+					htmlRenderer.isConditionalRequests()
+					&& ("GET".equals(method) || "HEAD".equals(method))
+				) {
+					long ifModifiedSince;
+					try {
+						ifModifiedSince = request.getDateHeader("If-Modified-Since");
+					} catch(IllegalArgumentException e) {
+						// Ignore invalid dates
+						ifModifiedSince = -1;
+					}
+					// Determining the last modified time may be costly, so only done when indexed or needed by the request
+					if(
+						ifModifiedSince != -1
+						|| htmlRenderer.getCacheMaxAge(request) > 0
+					) {
+						ReadableInstant lastModified = htmlRenderer.getLastModified(request, response, view, page);
+						if(lastModified != null) {
+							// HTTP dates have a resolution of seconds
+							long lastModifiedMillis = lastModified.getMillis() / 1000 * 1000;
+							if(ifModifiedSince != -1 && ifModifiedSince >= lastModifiedMillis) {
+								response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+								return;
+							}
+							response.setDateHeader("Last-Modified", lastModifiedMillis);
+						}
+					}
+				}
+
 				// Find the theme
 				Theme theme = null;
 				{
@@ -563,27 +1403,25 @@ public class HtmlRenderer implements Renderer {
 				try {
 					Theme.setTheme(request, theme);
 
-					// Configure the theme resources
-					theme.configureResources(
-						servletContext,
-						request,
-						response,
-						view,
-						page,
-						RegistryEE.Request.get(servletContext, request)
-					);
+					// Configure the theme and view resources
+					htmlRenderer.configureResources(request, response, theme, view, page);
+
+					// TODO: Configure the page resources here or within view?
+
+					// Capture link targets before the body is rendered
+					if(view.isPageContentRendered()) {
+						LinkRenderer.prefetchLinks(servletContext, request, response, page.getPageRef());
+					}
 
-					// Configure the view resources
-					view.configureResources(
+					// Prepare components concurrently, after the prefetch has finished changing the request
+					ComponentPreparation.start(
 						servletContext,
+						htmlRenderer,
 						request,
 						response,
-						theme,
-						page,
-						RegistryEE.Request.get(servletContext, request)
-					);
-
-					// TODO: Configure the page resources here or within view?
+						view,
+						page
+					).join(request);
 
 					// Forward to theme
 					theme.doTheme(servletContext, request, response, view, page);
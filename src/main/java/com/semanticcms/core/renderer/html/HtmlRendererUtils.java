@@ -28,7 +28,9 @@ import com.semanticcms.core.controller.PageUtils;
 import com.semanticcms.core.model.Page;
 import com.semanticcms.core.pages.CaptureLevel;
 import java.io.IOException;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Set;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -43,6 +45,7 @@ final public class HtmlRendererUtils {
 	/**
 	 * Gets all the parents of the given page that are not in missing books
 	 * and are applicable to the given view.
+	 * The parents are captured at the {@linkplain View#getApplicableCaptureLevel() level required by the view}.
 	 *
 	 * @return  The filtered set of parents, in the order declared by the page.
 	 */
@@ -53,18 +56,25 @@ final public class HtmlRendererUtils {
 		View view,
 		Page page
 	) throws ServletException, IOException {
-		Collection<Page> parents = CapturePage.capturePages(
-			servletContext,
-			request,
-			response,
-			PageUtils.filterNotMissingBook(servletContext, page.getParentRefs()),
-			CaptureLevel.META // TODO: View provide capture level required for isApplicable check, might be PAGE or (null for none) for some views.
-		).values();
-		Set<Page> applicableParents = AoCollections.newLinkedHashSet(parents.size());
+		// Parents are always captured at PAGE level or higher, since they are returned
+		CaptureLevel captureLevel = view.getApplicableCaptureLevel();
+		if(captureLevel == null) captureLevel = CaptureLevel.PAGE;
+		List<Page> parents = new ArrayList<>(
+			CapturePage.capturePages(
+				servletContext,
+				request,
+				response,
+				PageUtils.filterNotMissingBook(servletContext, page.getParentRefs()),
+				captureLevel
+			).values()
+		);
 		for(Page parent : parents) {
-			if(view.isApplicable(servletContext, request, response, parent)) {
-				applicableParents.add(parent);
-			}
+			ExportDependencies.addDependency(request, parent.getPageRef());
+		}
+		BitSet applicable = HtmlRenderer.getInstance(servletContext).getApplicable(request, response, view, parents);
+		Set<Page> applicableParents = AoCollections.newLinkedHashSet(applicable.cardinality());
+		for(int i = applicable.nextSetBit(0); i >= 0; i = applicable.nextSetBit(i + 1)) {
+			applicableParents.add(parents.get(i));
 		}
 		return AoCollections.optimalUnmodifiableSet(applicableParents);
 	}
@@ -28,6 +28,7 @@ import com.aoapps.html.any.AnyA;
 import com.aoapps.html.any.AnyA_c;
 import com.aoapps.html.any.AnySPAN;
 import com.aoapps.html.any.AnySPAN_c;
+import com.aoapps.html.any.AnySUP_c;
 import com.aoapps.html.any.AnyUnion_Palpable_Phrasing;
 import static com.aoapps.lang.Strings.nullIfEmpty;
 import com.aoapps.lang.validation.ValidationException;
@@ -37,9 +38,9 @@ import com.aoapps.net.URIEncoder;
 import com.aoapps.net.URIParameters;
 import com.aoapps.servlet.http.HttpServletUtil;
 import static com.aoapps.taglib.AttributeUtils.resolveValue;
-import com.semanticcms.core.controller.Book;
 import com.semanticcms.core.controller.CapturePage;
 import com.semanticcms.core.controller.PageRefResolver;
+import com.semanticcms.core.controller.PageUtils;
 import com.semanticcms.core.controller.SemanticCMS;
 import com.semanticcms.core.model.BookRef;
 import com.semanticcms.core.model.Element;
@@ -52,6 +53,10 @@ import com.semanticcms.core.pages.local.CurrentCaptureLevel;
 import com.semanticcms.core.pages.local.CurrentNode;
 import com.semanticcms.core.pages.local.CurrentPage;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
 import javax.el.ELContext;
 import javax.el.ValueExpression;
 import javax.servlet.ServletContext;
@@ -228,6 +233,82 @@ final public class LinkRenderer {
 		}
 	}
 
+	/**
+	 * Captures the targets of all links on the given page, in parallel when possible, so the links
+	 * do not each capture their target serially when the page body is rendered.
+	 * <p>
+	 * The links are those recorded when the page is captured at {@link CaptureLevel#META}.
+	 * Targets are captured at {@link CaptureLevel#PAGE}, which is sufficient for links to pages.
+	 * Targets of links to elements, as learned when the page was previously rendered, are captured at
+	 * {@link CaptureLevel#META}.  Targets already in the {@linkplain HtmlRenderer#getPageMetadata(javax.servlet.http.HttpServletRequest, com.semanticcms.core.model.PageRef) metadata index}
+	 * at the needed level are not captured.
+	 * </p>
+	 * <p>
+	 * Captured targets are shared with the links through the metadata index, which is limited to the current request
+	 * when not {@linkplain HtmlRenderer#getCacheMaxAge(javax.servlet.http.HttpServletRequest) caching}.
+	 * Element targets are only learned while caching, so are not prefetched otherwise.
+	 * </p>
+	 */
+	public static void prefetchLinks(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		PageRef pageRef
+	) throws ServletException, IOException {
+		HtmlRenderer htmlRenderer = HtmlRenderer.getInstance(servletContext);
+		Page page = CapturePage.capturePage(
+			servletContext,
+			request,
+			response,
+			pageRef,
+			CaptureLevel.META
+		);
+		Set<PageRef> targets = new LinkedHashSet<>(page.getPageLinks());
+		for(Element element : page.getElements()) {
+			targets.addAll(element.getPageLinks());
+		}
+		targets.remove(pageRef);
+		Set<PageRef> elementTargets = new LinkedHashSet<>();
+		for(PageRef target : htmlRenderer.getElementLinkTargets(request, pageRef)) {
+			if(targets.remove(target)) elementTargets.add(target);
+		}
+		targets.removeIf(target -> htmlRenderer.getPageMetadata(request, target) != null);
+		elementTargets.removeIf(target -> {
+			PageMetadata indexed = htmlRenderer.getPageMetadata(request, target);
+			return indexed != null && indexed.hasElements();
+		});
+		prefetchTargets(servletContext, request, response, htmlRenderer, targets, CaptureLevel.PAGE);
+		prefetchTargets(servletContext, request, response, htmlRenderer, elementTargets, CaptureLevel.META);
+	}
+
+	/**
+	 * Captures and indexes the given targets together.  Robots are also determined for the default view,
+	 * since links resolved from the index need them.
+	 */
+	private static void prefetchTargets(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		HtmlRenderer htmlRenderer,
+		Set<PageRef> targets,
+		CaptureLevel captureLevel
+	) throws ServletException, IOException {
+		if(targets.isEmpty()) return;
+		View defaultView = htmlRenderer.getViewsByName().get(Link.DEFAULT_VIEW_NAME);
+		for(Page target : CapturePage.capturePages(
+			servletContext,
+			request,
+			response,
+			PageUtils.filterNotMissingBook(servletContext, targets),
+			captureLevel
+		).values()) {
+			PageMetadata metadata = htmlRenderer.indexPage(request, target, captureLevel);
+			if(metadata != null && defaultView != null && metadata.getAllowRobots(defaultView) == null) {
+				metadata.getAllowRobots(servletContext, request, response, defaultView, target);
+			}
+		}
+	}
+
 	/**
 	 * @param  <Ex>  An arbitrary exception type that may be thrown
 	 */
@@ -380,28 +461,92 @@ final public class LinkRenderer {
 		LinkRendererBody<Ex> body,
 		CaptureLevel captureLevel
 	) throws Ex, ServletException, IOException, SkipPageException {
-		assert captureLevel.compareTo(CaptureLevel.META) >= 0;
+		writeLinkImpl(
+			servletContext,
+			request,
+			response,
+			content,
+			getPageRef(servletContext, request, domain, book, page),
+			element,
+			allowGeneratedElement,
+			anchor,
+			viewName,
+			small,
+			params,
+			absolute,
+			canonical,
+			clazz,
+			body,
+			captureLevel
+		);
+	}
 
+	/**
+	 * Resolves the target of a link.
+	 *
+	 * @return  the target page or {@code null} when the link is to the current page
+	 */
+	static PageRef getPageRef(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		DomainName domain,
+		Path book,
+		String page
+	) throws ServletException, IOException {
 		page = nullIfEmpty(page);
 
 		if(domain != null && book == null) {
 			throw new ServletException("book must be provided when domain is provided.");
 		}
+		if(page == null) {
+			if(book != null) throw new ServletException("page must be provided when book is provided.");
+			return null;
+		} else {
+			return PageRefResolver.getPageRef(servletContext, request, domain, book, page);
+		}
+	}
+
+	/**
+	 * @param  content  {@link AnyUnion_Palpable_Phrasing} provides both {@link AnyA} and {@link AnySPAN}.
+	 * @param  pageRef  the target page, already {@linkplain #getPageRef(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, com.aoapps.net.DomainName, com.aoapps.net.Path, java.lang.String) resolved},
+	 *                  or {@code null} to link to the current page
+	 * @param  <Ex>  An arbitrary exception type that may be thrown
+	 */
+	static <Ex extends Throwable> void writeLinkImpl(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		AnyUnion_Palpable_Phrasing<?, ?> content,
+		PageRef pageRef,
+		String element,
+		boolean allowGeneratedElement,
+		String anchor,
+		String viewName,
+		boolean small,
+	    URIParameters params,
+		boolean absolute,
+		boolean canonical,
+		Object clazz,
+		LinkRendererBody<Ex> body,
+		CaptureLevel captureLevel
+	) throws Ex, ServletException, IOException, SkipPageException {
+		assert captureLevel.compareTo(CaptureLevel.META) >= 0;
 
 		final Node currentNode = CurrentNode.getCurrentNode(request);
 		final Page currentPage = CurrentPage.getCurrentPage(request);
 
 		// Use current page when page not set
 		final PageRef targetPageRef;
-		if(page == null) {
-			if(book != null) throw new ServletException("page must be provided when book is provided.");
+		if(pageRef == null) {
 			if(currentPage == null) throw new ServletException("link must be nested in page when page attribute not set.");
 			targetPageRef = currentPage.getPageRef();
 		} else {
-			targetPageRef = PageRefResolver.getPageRef(servletContext, request, domain, book, page);
+			targetPageRef = pageRef;
 		}
 		// Add page links
 		if(currentNode != null) currentNode.addPageLink(targetPageRef);
+		// The link text depends on the target, whether resolved or cached
+		ExportDependencies.addDependency(request, targetPageRef);
 		if(captureLevel == CaptureLevel.BODY) {
 			element = nullIfEmpty(element);
 			anchor = nullIfEmpty(anchor);
@@ -413,123 +558,65 @@ final public class LinkRenderer {
 			if(viewName == null) viewName = Link.DEFAULT_VIEW_NAME;
 
 			// Find the view
-			final SemanticCMS semanticCMS = SemanticCMS.getInstance(servletContext);
 			final HtmlRenderer htmlRenderer = HtmlRenderer.getInstance(servletContext);
+
+			// Learn the element targets, to be captured at the needed level by the next prefetch
+			if(
+				element != null
+				&& currentPage != null
+				&& !targetPageRef.equals(currentPage.getPageRef())
+			) {
+				htmlRenderer.addElementLinkTarget(request, currentPage.getPageRef(), targetPageRef);
+			}
 			final View view = htmlRenderer.getViewsByName().get(viewName);
 			if(view == null) throw new ServletException("View not found: " + viewName);
-			final boolean isDefaultView = view.isDefault();
-
-			// Capture the page
-			final BookRef targetBookRef = targetPageRef.getBookRef();
-			final Book targetBook = semanticCMS.getBook(targetBookRef);
-			Page targetPage;
-			if(!targetBook.isAccessible()) {
-				// Book is not accessible
-				targetPage = null;
-			} else if(
-				// Short-cut for element already added above within current page
-				currentPage != null
-				&& targetPageRef.equals(currentPage.getPageRef())
-				&& (
-					element == null
-					|| currentPage.getElementsById().containsKey(element)
-				)
+
+			PageIndex pageIndex = PageIndex.getCurrentPageIndex(request);
+			int index = pageIndex==null ? -1 : pageIndex.indexOf(targetPageRef);
+
+			// Resolved links are only shared between requests when they do not depend on the current page or page index
+			final long cacheMaxAge;
+			final CacheKey cacheKey;
+			if(
+				pageIndex == null
+				&& (currentPage == null || !targetPageRef.equals(currentPage.getPageRef()))
 			) {
-				targetPage = currentPage;
+				cacheMaxAge = htmlRenderer.getCacheMaxAge(request);
+				cacheKey = (cacheMaxAge > 0) ? new CacheKey(targetPageRef, element, allowGeneratedElement, anchor, viewName, absolute, canonical) : null;
 			} else {
-				// Capture required, even if capturing self
-				targetPage = CapturePage.capturePage(
+				cacheMaxAge = 0;
+				cacheKey = null;
+			}
+			Resolved resolved = (cacheKey == null) ? null : htmlRenderer.linkCache.get(cacheKey, cacheMaxAge);
+			if(resolved == null) {
+				resolved = resolve(
 					servletContext,
 					request,
 					response,
+					htmlRenderer,
+					currentPage,
 					targetPageRef,
-					element == null ? CaptureLevel.PAGE : CaptureLevel.META
+					element,
+					allowGeneratedElement,
+					anchor,
+					view,
+					absolute,
+					pageIndex,
+					index
 				);
-			}
-
-			// Find the element
-			Element targetElement;
-			if(element != null && targetPage != null) {
-				targetElement = targetPage.getElementsById().get(element);
-				if(targetElement == null) throw new ServletException("Element not found in target page: " + element);
-				if(!allowGeneratedElement && targetPage.getGeneratedIds().contains(element)) throw new ServletException("Not allowed to link to a generated element id, set an explicit id on the target element: " + element);
-				if(targetElement.isHidden()) throw new ServletException("Not allowed to link to a hidden element: " + element);
-			} else {
-				targetElement = null;
-			}
-
-			// Write a link to the page
-
-			PageIndex pageIndex = PageIndex.getCurrentPageIndex(request);
-			Integer index = pageIndex==null ? null : pageIndex.getPageIndex(targetPageRef);
-
-			StringBuilder href = new StringBuilder();
-			if(element == null) {
-				if(anchor == null) {
-					// Link to page
-					if(index != null && isDefaultView) {
-						href.append('#');
-						URIEncoder.encodeURIComponent(PageIndex.getRefId(index, null), href);
-					} else {
-						// TODO: Support multi-domain
-						href.append(targetBookRef.getPrefix());
-						href.append(targetPageRef.getPath());
-						if(!isDefaultView) {
-							boolean hasQuestion = href.lastIndexOf("?") != -1;
-							href.append(hasQuestion ? "&view=" : "?view=");
-							URIEncoder.encodeURIComponent(viewName, href);
-						}
-					}
-				} else {
-					// Link to anchor in page
-					if(index != null && isDefaultView) {
-						// Link to target in indexed page (view=all mode)
-						href.append('#');
-						URIEncoder.encodeURIComponent(PageIndex.getRefId(index, anchor), href);
-					} else if(!absolute && currentPage!=null && currentPage.equals(targetPage) && isDefaultView) {
-						// Link to target on same page
-						href.append('#');
-						URIEncoder.encodeURIComponent(anchor, href);
-					} else {
-						// Link to target on different page (or same page, absolute or different view)
-						// TODO: Support multi-domain
-						href.append(targetBookRef.getPrefix());
-						href.append(targetPageRef.getPath());
-						if(!isDefaultView) {
-							boolean hasQuestion = href.lastIndexOf("?") != -1;
-							href.append(hasQuestion ? "&view=" : "?view=");
-							URIEncoder.encodeURIComponent(viewName, href);
-						}
-						href.append('#');
-						URIEncoder.encodeURIComponent(anchor, href);
-					}
-				}
-			} else {
-				if(index != null && isDefaultView) {
-					// Link to target in indexed page (view=all mode)
-					href.append('#');
-					URIEncoder.encodeURIComponent(PageIndex.getRefId(index, element), href);
-				} else if(!absolute && currentPage!=null && currentPage.equals(targetPage) && isDefaultView) {
-					// Link to target on same page
-					href.append('#');
-					URIEncoder.encodeURIComponent(element, href);
-				} else {
-					// Link to target on different page (or same page, absolute or different view)
-					// TODO: Support multi-domain
-					href.append(targetBookRef.getPrefix());
-					href.append(targetPageRef.getPath());
-					if(!isDefaultView) {
-						boolean hasQuestion = href.lastIndexOf("?") != -1;
-						href.append(hasQuestion ? "&view=" : "?view=");
-						URIEncoder.encodeURIComponent(viewName, href);
-					}
-					href.append('#');
-					URIEncoder.encodeURIComponent(element, href);
+				if(cacheKey != null && resolved.text != null) {
+					htmlRenderer.linkCache.put(
+						cacheKey,
+						resolved.toCacheable(),
+						cacheMaxAge,
+						Collections.singleton(targetPageRef)
+					);
 				}
 			}
-			// Add nofollow consistent with view and page settings.
-			// TODO: Nofollow to missing books that cause targetPage to be null here?
-			boolean nofollow = targetPage != null && !view.getAllowRobots(servletContext, request, response, targetPage);
+			final String href = resolved.href;
+			final boolean nofollow = resolved.nofollow;
+			final Object linkText = resolved.text;
+			final String linkCssClass = resolved.linkCssClass;
 
 			final String element_ = element;
 			if(small) {
@@ -537,35 +624,33 @@ final public class LinkRenderer {
 				if(clazz != null) {
 					span.clazz(clazz);
 				} else {
-					if(targetElement != null) {
-						span.clazz(htmlRenderer.getLinkCssClass(targetElement));
+					if(linkCssClass != null) {
+						span.clazz(linkCssClass);
 					}
 				}
 				try (AnySPAN_c<?, ?, ?> span__ = span._c()) {
 					if(body == null) {
-						if(targetElement != null) {
-							span__.text(targetElement);
-						} else if(targetPage != null) {
-							span__.text(targetPage.getTitle());
+						if(linkText != null) {
+							span__.text(linkText);
 						} else {
 							span__.text(text -> writeBrokenPath(targetPageRef, element_, text));
 						}
-						if(index != null) {
-							span__.sup__any(sup -> sup
-								.text('[').text(index + 1).text(']')
-							);
+						if(index != -1) {
+							try (AnySUP_c<?, ?, ?> sup__ = span__.sup_c()) {
+								sup__.text('[').text(index + 1).text(']');
+							}
 						}
 					} else {
 						body.doBody(false);
 					}
 					// TODO: Support multi-domain
-					span__.sup__any(sup -> sup
-						.a()
+					try (AnySUP_c<?, ?, ?> sup__ = span__.sup_c()) {
+						sup__.a()
 							.href(
 								HttpServletUtil.buildURL(
 									request,
 									response,
-									href.toString(),
+									href,
 									params,
 									absolute,
 									canonical
@@ -576,15 +661,15 @@ final public class LinkRenderer {
 							// TODO: Make [link] not copied during select/copy/paste, to not corrupt semantic meaning (and make more useful in copy/pasted code and scripts)?
 							// TODO: https://stackoverflow.com/questions/3271231/how-to-exclude-portions-of-text-when-copying
 							"[link]"
-						)
-					);
+						);
+					}
 				}
 			} else {
 				AnyA<?, ? extends AnyUnion_Palpable_Phrasing<?, ?>, ?, ?> a = content.a(
 					HttpServletUtil.buildURL(
 						request,
 						response,
-						href.toString(),
+						href,
 						params,
 						absolute,
 						canonical
@@ -593,24 +678,22 @@ final public class LinkRenderer {
 				if(clazz != null) {
 					a.clazz(clazz);
 				} else {
-					if(targetElement != null) {
-						a.clazz(htmlRenderer.getLinkCssClass(targetElement));
+					if(linkCssClass != null) {
+						a.clazz(linkCssClass);
 					}
 				}
 				if(nofollow) a.rel(AnyA.Rel.NOFOLLOW);
 				try (AnyA_c<?, ? extends AnyUnion_Palpable_Phrasing<?, ?>, ?> a_c = a._c()) {
 					if(body == null) {
-						if(targetElement != null) {
-							a_c.pc().text(targetElement);
-						} else if(targetPage != null) {
-							a_c.pc().text(targetPage.getTitle());
+						if(linkText != null) {
+							a_c.pc().text(linkText);
 						} else {
 							a_c.pc().text(text -> writeBrokenPath(targetPageRef, element_, text));
 						}
-						if(index != null) {
-							a_c.pc().sup__any(sup -> sup
-								.text('[').text(index + 1).text(']')
-							);
+						if(index != -1) {
+							try (AnySUP_c<?, ?, ?> sup__ = a_c.pc().sup_c()) {
+								sup__.text('[').text(index + 1).text(']');
+							}
 						}
 					} else {
 						body.doBody(false);
@@ -623,6 +706,301 @@ final public class LinkRenderer {
 		}
 	}
 
+	/**
+	 * Resolves the target page and element of a link and builds its href.
+	 *
+	 * @param  pageIndex  the current {@link PageIndex} or {@code null} when none
+	 * @param  index  the index of the target page in the current {@link PageIndex} or {@code -1} when none
+	 * @param  resolved  the instance to resolve into, which is returned
+	 */
+	private static Resolved resolve(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		HtmlRenderer htmlRenderer,
+		Page currentPage,
+		PageRef targetPageRef,
+		String element,
+		boolean allowGeneratedElement,
+		String anchor,
+		View view,
+		boolean absolute,
+		PageIndex pageIndex,
+		int index
+	) throws ServletException, IOException {
+		final boolean isDefaultView = view.isDefault();
+
+		// Capture the page
+		Page targetPage;
+		PageMetadata targetMetadata;
+		if(
+			// Short-cut for element already added above within current page, which is in an accessible book since being rendered
+			currentPage != null
+			&& targetPageRef.equals(currentPage.getPageRef())
+			&& (
+				element == null
+				|| currentPage.getElementsById().containsKey(element)
+			)
+		) {
+			targetPage = currentPage;
+			targetMetadata = null;
+		} else if(!SemanticCMS.getInstance(servletContext).getBook(targetPageRef.getBookRef()).isAccessible()) {
+			// Book is not accessible
+			targetPage = null;
+			targetMetadata = null;
+		} else {
+			// Use the indexed metadata instead of capturing, when it has everything needed for this link
+			PageMetadata indexed = (currentPage == null || !targetPageRef.equals(currentPage.getPageRef()))
+				? htmlRenderer.getPageMetadata(request, targetPageRef)
+				: null;
+			if(
+				indexed != null
+				&& (element == null || indexed.hasElements())
+				&& indexed.getAllowRobots(view) != null
+			) {
+				targetPage = null;
+				targetMetadata = indexed;
+			} else {
+				// Capture required, even if capturing self
+				CaptureLevel targetCaptureLevel = element == null ? CaptureLevel.PAGE : CaptureLevel.META;
+				targetPage = CapturePage.capturePage(
+					servletContext,
+					request,
+					response,
+					targetPageRef,
+					targetCaptureLevel
+				);
+				targetMetadata = htmlRenderer.indexPage(request, targetPage, targetCaptureLevel);
+			}
+		}
+
+		// Find the element
+		Object text;
+		String linkCssClass;
+		if(element != null && targetPage != null) {
+			Element targetElement = targetPage.getElementsById().get(element);
+			if(targetElement == null) throw new ServletException("Element not found in target page: " + element);
+			if(!allowGeneratedElement && targetPage.getGeneratedIds().contains(element)) throw new ServletException("Not allowed to link to a generated element id, set an explicit id on the target element: " + element);
+			if(targetElement.isHidden()) throw new ServletException("Not allowed to link to a hidden element: " + element);
+			text = targetElement;
+			linkCssClass = htmlRenderer.getLinkCssClass(targetElement);
+		} else if(element != null && targetMetadata != null) {
+			PageMetadata.ElementMetadata targetElement = targetMetadata.getElementsById().get(element);
+			if(targetElement == null) throw new ServletException("Element not found in target page: " + element);
+			if(!allowGeneratedElement && targetElement.isGenerated()) throw new ServletException("Not allowed to link to a generated element id, set an explicit id on the target element: " + element);
+			if(targetElement.isHidden()) throw new ServletException("Not allowed to link to a hidden element: " + element);
+			text = targetElement.getText();
+			linkCssClass = targetElement.getLinkCssClass();
+		} else {
+			if(targetPage != null) {
+				text = targetPage.getTitle();
+			} else if(targetMetadata != null) {
+				text = targetMetadata.getTitle();
+			} else {
+				text = null;
+			}
+			linkCssClass = null;
+		}
+
+		// Write a link to the page
+		String href;
+		// Links to elements and anchors are the same, other than anchors not being verified
+		String id = (element != null) ? element : anchor;
+		if(index != -1 && isDefaultView) {
+			// Link to page or target in indexed page (view=all mode)
+			href = pageIndex.isInRange(index) ? getIndexedHref(index, id) : pageIndex.getRangeHref(index, id);
+		} else if(
+			id != null
+			&& !absolute && currentPage!=null && currentPage.equals(targetPage) && isDefaultView
+		) {
+			// Link to target on same page
+			href = getAnchorHref(id);
+		} else {
+			// Link to page or target on different page (or same page, absolute or different view)
+			href = getPageHref(targetPageRef, view, id);
+		}
+		// Add nofollow consistent with view and page settings.
+		// TODO: Nofollow to missing books that cause targetPage to be null here?
+		boolean nofollow;
+		if(targetPage != null) {
+			nofollow = !(
+				targetMetadata != null
+				? targetMetadata.getAllowRobots(servletContext, request, response, view, targetPage)
+				: view.getAllowRobots(servletContext, request, response, targetPage)
+			);
+		} else if(targetMetadata != null) {
+			nofollow = !targetMetadata.getAllowRobots(view);
+		} else {
+			nofollow = false;
+		}
+
+		return new Resolved(href, text, linkCssClass, nofollow);
+	}
+
+	/**
+	 * Gets the href to a page or target within a page in the current {@link PageIndex}.
+	 *
+	 * @param  id  optional, id not added when null
+	 */
+	static String getIndexedHref(int index, String id) {
+		String pageId = PageIndex.getPageId(index);
+		StringBuilder href = new StringBuilder(
+			1 // '#'
+			+ pageId.length()
+			+ (id == null ? 0 : (1 + id.length()))
+		);
+		href.append('#').append(pageId);
+		if(id != null) {
+			href.append('-');
+			URIEncoder.encodeURIComponent(id, href);
+		}
+		return href.toString();
+	}
+
+	/**
+	 * Gets the href to a target on the same page.
+	 */
+	static String getAnchorHref(String id) {
+		StringBuilder href = new StringBuilder(1 + id.length());
+		href.append('#');
+		URIEncoder.encodeURIComponent(id, href);
+		return href.toString();
+	}
+
+	/**
+	 * Gets the href to a page or target within a page, in the given view.
+	 *
+	 * @param  id  optional, id not added when null
+	 */
+	// TODO: Support multi-domain
+	static String getPageHref(PageRef targetPageRef, View view, String id) {
+		String prefix = targetPageRef.getBookRef().getPrefix();
+		String path = targetPageRef.getPath().toString();
+		boolean isDefaultView = view.isDefault();
+		if(isDefaultView && id == null) {
+			// Common case of default view link to page
+			return prefix.isEmpty() ? path : prefix.concat(path);
+		}
+		String viewName = isDefaultView ? null : view.getName();
+		StringBuilder href = new StringBuilder(
+			prefix.length()
+			+ path.length()
+			+ (viewName == null ? 0 : (6 + viewName.length())) // "?view="
+			+ (id == null ? 0 : (1 + id.length()))
+		);
+		href.append(prefix).append(path);
+		if(viewName != null) {
+			boolean hasQuestion = prefix.indexOf('?') != -1 || path.indexOf('?') != -1;
+			href.append(hasQuestion ? "&view=" : "?view=");
+			URIEncoder.encodeURIComponent(viewName, href);
+		}
+		if(id != null) {
+			href.append('#');
+			URIEncoder.encodeURIComponent(id, href);
+		}
+		return href.toString();
+	}
+
+	/**
+	 * The key used for caching resolved links between requests.
+	 * The current page and page index are not part of the key, since links depending on them are not cached.
+	 */
+	static final class CacheKey {
+
+		private final PageRef targetPageRef;
+		private final String element;
+		private final boolean allowGeneratedElement;
+		private final String anchor;
+		private final String viewName;
+		private final boolean absolute;
+		private final boolean canonical;
+
+		/**
+		 * Package-private for benchmarks to populate the cache.
+		 */
+		CacheKey(
+			PageRef targetPageRef,
+			String element,
+			boolean allowGeneratedElement,
+			String anchor,
+			String viewName,
+			boolean absolute,
+			boolean canonical
+		) {
+			this.targetPageRef = targetPageRef;
+			this.element = element;
+			this.allowGeneratedElement = allowGeneratedElement;
+			this.anchor = anchor;
+			this.viewName = viewName;
+			this.absolute = absolute;
+			this.canonical = canonical;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof CacheKey)) return false;
+			CacheKey other = (CacheKey)obj;
+			return
+				allowGeneratedElement == other.allowGeneratedElement
+				&& absolute == other.absolute
+				&& canonical == other.canonical
+				&& targetPageRef.equals(other.targetPageRef)
+				&& Objects.equals(element, other.element)
+				&& Objects.equals(anchor, other.anchor)
+				&& viewName.equals(other.viewName);
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = targetPageRef.hashCode();
+			hash = hash * 31 + Objects.hashCode(element);
+			hash = hash * 31 + Objects.hashCode(anchor);
+			hash = hash * 31 + viewName.hashCode();
+			if(allowGeneratedElement) hash += 1;
+			if(absolute) hash += 2;
+			if(canonical) hash += 4;
+			return hash;
+		}
+	}
+
+	/**
+	 * A link with its target resolved, ready to be written.
+	 */
+	static final class Resolved {
+
+		/**
+		 * The href, before being {@linkplain HttpServletUtil#buildURL(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, java.lang.String, com.aoapps.net.URIParameters, boolean, boolean) built}
+		 * for the current request.
+		 */
+		private final String href;
+
+		/**
+		 * The text for the link when no body is provided or {@code null} when the target page is missing.
+		 */
+		private final Object text;
+
+		private final String linkCssClass;
+		private final boolean nofollow;
+
+		/**
+		 * Package-private for benchmarks to populate the cache.
+		 */
+		Resolved(String href, Object text, String linkCssClass, boolean nofollow) {
+			this.href = href;
+			this.text = text;
+			this.linkCssClass = linkCssClass;
+			this.nofollow = nofollow;
+		}
+
+		/**
+		 * Gets a copy that does not retain the target element, and thus the target page, for sharing between requests.
+		 */
+		private Resolved toCacheable() {
+			if(text == null || text instanceof String) return this;
+			return new Resolved(href, text.toString(), linkCssClass, nofollow);
+		}
+	}
+
 	/**
 	 * Make no instances.
 	 */
@@ -114,11 +114,14 @@ final public class NavigationTreeRenderer {
 		}
 		if(childRefs != null) {
 			SemanticCMS semanticCMS = SemanticCMS.getInstance(servletContext);
+			HtmlRenderer htmlRenderer = HtmlRenderer.getInstance(servletContext);
+			CaptureLevel childCaptureLevel = includeElements || metaCapture ? CaptureLevel.META : CaptureLevel.PAGE;
 			for(ChildRef childRef : childRefs) {
 				PageRef childPageRef = childRef.getPageRef();
 				// Child is in an accessible book
 				if(semanticCMS.getBook(childPageRef.getBookRef()).isAccessible()) {
-					Page childPage = CapturePage.capturePage(servletContext, request, response, childPageRef, includeElements || metaCapture ? CaptureLevel.META : CaptureLevel.PAGE);
+					Page childPage = CapturePage.capturePage(servletContext, request, response, childPageRef, childCaptureLevel);
+					htmlRenderer.indexPage(request, childPage, childCaptureLevel);
 					childNodes.add(childPage);
 				}
 			}
@@ -170,6 +173,7 @@ final public class NavigationTreeRenderer {
 				PageRef childPageRef = childRef.getPageRef();
 				// Child is in an accessible book
 				if(semanticCMS.getBook(childPageRef.getBookRef()).isAccessible()) {
+					ExportDependencies.addDependency(request, childPageRef);
 					Page child = CapturePage.capturePage(servletContext, request, response, childPageRef, CaptureLevel.META);
 					if(findLinks(servletContext, request, response, semanticCMS, linksTo, nodesWithLinks, nodesWithChildLinks, child, includeElements)) {
 						hasChildLink = true;
@@ -544,9 +548,9 @@ final public class NavigationTreeRenderer {
 				}
 			}
 			a.target(target);
-			Integer index = pageIndex==null ? null : pageIndex.getPageIndex(pageRef);
+			int index = pageIndex==null ? -1 : pageIndex.indexOf(pageRef);
 			StringBuilder href = new StringBuilder();
-			if(index != null) {
+			if(index != -1 && pageIndex.isInRange(index)) {
 				href.append('#');
 				URIEncoder.encodeURIComponent(
 					PageIndex.getRefId(
@@ -555,6 +559,16 @@ final public class NavigationTreeRenderer {
 					),
 					href
 				);
+			} else if(index != -1) {
+				// Page in another range of the combined view
+				URIEncoder.encodeURI(request.getContextPath(), href);
+				URIEncoder.encodeURI(
+					pageIndex.getRangeHref(
+						index,
+						element==null ? null : element.getId()
+					),
+					href
+				);
 			} else {
 				URIEncoder.encodeURI(request.getContextPath(), href);
 				URIEncoder.encodeURI(servletPath, href);
@@ -567,7 +581,7 @@ final public class NavigationTreeRenderer {
 				} else {
 					a__.text(node);
 				}
-				if(index != null) {
+				if(index != -1) {
 					a__.sup__any(sup -> sup
 						.text('[').text(index + 1).text(']')
 					);
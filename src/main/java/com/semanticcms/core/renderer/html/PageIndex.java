@@ -24,21 +24,32 @@ package com.semanticcms.core.renderer.html;
 
 import com.aoapps.collections.AoCollections;
 import com.aoapps.lang.NullArgumentException;
+import com.aoapps.net.URIEncoder;
 import com.semanticcms.core.controller.CapturePage;
 import com.semanticcms.core.controller.PageDags;
 import com.semanticcms.core.controller.PageRefResolver;
+import com.semanticcms.core.controller.SemanticCMS;
+import com.semanticcms.core.model.ChildRef;
 import com.semanticcms.core.model.Page;
 import com.semanticcms.core.model.PageRef;
 import com.semanticcms.core.pages.CaptureLevel;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.jsp.SkipPageException;
 
 /**
  * Captures all pages recursively and builds an index of pages
@@ -53,6 +64,14 @@ public class PageIndex {
 	 */
 	public static final String REQUEST_ATTRIBUTE = "pageIndex";
 
+	/**
+	 * The parameter that selects a range of pages from a combined view, as "first-last",
+	 * numbered from one as in the "page#" ids.
+	 *
+	 * @see  #getRange(javax.servlet.http.HttpServletRequest)
+	 */
+	public static final String PAGES_PARAM = "pages";
+
 	/**
 	 * Gets the current page index setup by a combined view or <code>null</code>
 	 * if not doing a combined view.
@@ -64,6 +83,11 @@ public class PageIndex {
 
 	/**
 	 * Captures the root with META capture level and all children as PAGE.
+	 * <p>
+	 * Page indexes are immutable and are shared between requests for up to the
+	 * {@linkplain HtmlRenderer#getCacheMaxAge(javax.servlet.http.HttpServletRequest) maximum cache age}.
+	 * A shared index is discarded when any page within it is {@linkplain HtmlRenderer#invalidate(com.semanticcms.core.model.PageRef) invalidated}.
+	 * </p>
 	 */
 	public static PageIndex getPageIndex(
 		ServletContext servletContext,
@@ -71,18 +95,276 @@ public class PageIndex {
 		HttpServletResponse response,
 		PageRef rootPageRef
 	) throws ServletException, IOException {
-		return new PageIndex(
-			servletContext,
-			request,
-			response,
-			CapturePage.capturePage(
+		HtmlRenderer htmlRenderer = HtmlRenderer.getInstance(servletContext);
+		long cacheMaxAge = htmlRenderer.getCacheMaxAge(request);
+		PageIndex pageIndex = htmlRenderer.pageIndexCache.get(rootPageRef, cacheMaxAge);
+		if(pageIndex == null) {
+			Page rootPage = CapturePage.capturePage(
 				servletContext,
 				request,
 				response,
 				rootPageRef,
 				CaptureLevel.META
-			)
+			);
+			List<Page> pageList = capturePageList(
+				servletContext,
+				request,
+				response,
+				rootPage
+			);
+			int size = pageList.size();
+			PageRef[] pageRefs = new PageRef[size];
+			for(int i=0; i<size; i++) {
+				pageRefs[i] = pageList.get(i).getPageRef();
+			}
+			pageIndex = new PageIndex(rootPage, pageList, pageRefs);
+			htmlRenderer.pageIndexCache.put(
+				rootPageRef,
+				pageIndex,
+				cacheMaxAge,
+				pageIndex.getPageRefs()
+			);
+		}
+		ExportDependencies.addDependencies(request, pageIndex.getPageRefs());
+		return pageIndex;
+	}
+
+	/**
+	 * Captures all pages in the DAG at {@link CaptureLevel#PAGE}, in the same order as
+	 * {@link PageDags#convertPageDagToList(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page, com.semanticcms.core.pages.CaptureLevel)}.
+	 * <p>
+	 * The DAG is {@linkplain #discoverByLevel(com.semanticcms.core.model.PageRef, com.semanticcms.core.renderer.html.PageIndex.LevelLookup) discovered one level at a time},
+	 * with each level captured together so that pages may be captured concurrently when the controller allows.
+	 * The list is then ordered by a depth-first, pre-order traversal of the captured pages.
+	 * </p>
+	 */
+	private static List<Page> capturePageList(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		Page rootPage
+	) throws ServletException, IOException {
+		SemanticCMS semanticCMS = SemanticCMS.getInstance(servletContext);
+		Map<PageRef, Page> captured = new HashMap<>();
+		captured.put(rootPage.getPageRef(), rootPage);
+		Map<PageRef, List<PageRef>> childPageRefs = discoverByLevel(
+			rootPage.getPageRef(),
+			level -> {
+				// The root is already captured
+				if(!captured.keySet().containsAll(level)) {
+					captured.putAll(
+						CapturePage.capturePages(
+							servletContext,
+							request,
+							response,
+							level,
+							CaptureLevel.PAGE
+						)
+					);
+				}
+				Map<PageRef, List<PageRef>> levelChildPageRefs = new HashMap<>();
+				for(PageRef pageRef : level) {
+					Set<ChildRef> childRefs = captured.get(pageRef).getChildRefs();
+					List<PageRef> children = new ArrayList<>(childRefs.size());
+					for(ChildRef childRef : childRefs) {
+						PageRef childPageRef = childRef.getPageRef();
+						// Child is in an accessible book
+						if(semanticCMS.getBook(childPageRef.getBookRef()).isAccessible()) {
+							children.add(childPageRef);
+						}
+					}
+					levelChildPageRefs.put(pageRef, children);
+				}
+				return levelChildPageRefs;
+			}
+		);
+		List<PageRef> pageRefs = new ArrayList<>(captured.size());
+		addPages(childPageRefs, rootPage.getPageRef(), new HashSet<>(), pageRefs);
+		List<Page> pageList = new ArrayList<>(pageRefs.size());
+		for(PageRef pageRef : pageRefs) {
+			pageList.add(captured.get(pageRef));
+		}
+		return Collections.unmodifiableList(pageList);
+	}
+
+	/**
+	 * Finds the child pages of each page in one level of the DAG.
+	 *
+	 * @see  #discoverByLevel(com.semanticcms.core.model.PageRef, com.semanticcms.core.renderer.html.PageIndex.LevelLookup)
+	 */
+	@FunctionalInterface
+	static interface LevelLookup {
+		/**
+		 * Gets the child pages to include for each of the given pages, in order.
+		 *
+		 * @param  level  the pages not yet looked-up, all found at the same depth
+		 */
+		Map<PageRef, List<PageRef>> getChildPageRefs(Set<PageRef> level) throws ServletException, IOException;
+	}
+
+	/**
+	 * Discovers a DAG one level at a time, looking-up each page only once.
+	 *
+	 * @return  the child pages of every page reachable from the root
+	 *
+	 * @see  #addPages(java.util.Map, com.semanticcms.core.model.PageRef, java.util.Set, java.util.List)
+	 */
+	static Map<PageRef, List<PageRef>> discoverByLevel(
+		PageRef rootPageRef,
+		LevelLookup lookup
+	) throws ServletException, IOException {
+		Map<PageRef, List<PageRef>> childPageRefs = new HashMap<>();
+		Set<PageRef> level = Collections.singleton(rootPageRef);
+		while(true) {
+			Map<PageRef, List<PageRef>> levelChildPageRefs = lookup.getChildPageRefs(level);
+			childPageRefs.putAll(levelChildPageRefs);
+			Set<PageRef> frontier = new LinkedHashSet<>();
+			for(PageRef pageRef : level) {
+				for(PageRef childPageRef : levelChildPageRefs.get(pageRef)) {
+					if(!childPageRefs.containsKey(childPageRef)) frontier.add(childPageRef);
+				}
+			}
+			if(frontier.isEmpty()) break;
+			level = frontier;
+		}
+		return childPageRefs;
+	}
+
+	/**
+	 * Performs a depth-first, pre-order traversal of the captured pages, skipping pages already visited.
+	 *
+	 * @param  childPageRefs  the child pages of each captured page
+	 *
+	 * @see  #capturePageList(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)
+	 */
+	static void addPages(
+		Map<PageRef, ? extends Collection<PageRef>> childPageRefs,
+		PageRef pageRef,
+		Set<PageRef> visited,
+		List<PageRef> pageRefs
+	) {
+		if(visited.add(pageRef)) {
+			pageRefs.add(pageRef);
+			for(PageRef childPageRef : childPageRefs.get(pageRef)) {
+				addPages(childPageRefs, childPageRef, visited, pageRefs);
+			}
+		}
+	}
+
+	/**
+	 * Gets a page index for streaming a combined view, which only retains the root page and the
+	 * {@link PageRef} of each page.  The pages are captured in the same order as
+	 * {@link #getPageIndex(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.PageRef)},
+	 * but each is released once its descendants have been found.
+	 * <p>
+	 * Use {@link #forEachPage(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.pages.CaptureLevel, com.semanticcms.core.renderer.html.PageIndex.PageHandler)}
+	 * to capture and render each page in turn.
+	 * </p>
+	 *
+	 * @see  #isRetainingPages()
+	 */
+	public static PageIndex getStreamingPageIndex(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		PageRef rootPageRef
+	) throws ServletException, IOException {
+		// Use the shared index, when available, since it already has everything
+		HtmlRenderer htmlRenderer = HtmlRenderer.getInstance(servletContext);
+		PageIndex pageIndex = htmlRenderer.pageIndexCache.get(rootPageRef, htmlRenderer.getCacheMaxAge(request));
+		if(pageIndex != null) {
+			ExportDependencies.addDependencies(request, pageIndex.getPageRefs());
+			return pageIndex;
+		}
+		Page rootPage = CapturePage.capturePage(
+			servletContext,
+			request,
+			response,
+			rootPageRef,
+			CaptureLevel.META
 		);
+		List<PageRef> pageRefs = new ArrayList<>();
+		addPageRefs(
+			servletContext,
+			request,
+			response,
+			SemanticCMS.getInstance(servletContext),
+			rootPage,
+			new HashSet<>(),
+			pageRefs
+		);
+		ExportDependencies.addDependencies(request, pageRefs);
+		return new PageIndex(rootPage, null, pageRefs.toArray(new PageRef[pageRefs.size()]));
+	}
+
+	/**
+	 * Performs a depth-first, pre-order traversal of the page DAG, skipping pages already visited and
+	 * pages in inaccessible books, matching the order of {@link PageDags#convertPageDagToList(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page, com.semanticcms.core.pages.CaptureLevel)}.
+	 */
+	private static void addPageRefs(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		SemanticCMS semanticCMS,
+		Page page,
+		Set<PageRef> visited,
+		List<PageRef> pageRefs
+	) throws ServletException, IOException {
+		PageRef pageRef = page.getPageRef();
+		if(visited.add(pageRef)) {
+			pageRefs.add(pageRef);
+			for(ChildRef childRef : page.getChildRefs()) {
+				PageRef childPageRef = childRef.getPageRef();
+				// Child is in an accessible book
+				if(
+					!visited.contains(childPageRef)
+					&& semanticCMS.getBook(childPageRef.getBookRef()).isAccessible()
+				) {
+					addPageRefs(
+						servletContext,
+						request,
+						response,
+						semanticCMS,
+						CapturePage.capturePage(servletContext, request, response, childPageRef, CaptureLevel.PAGE),
+						visited,
+						pageRefs
+					);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Page ids by index, "page1" for index 0, grown to the size of the largest page index.
+	 */
+	private static volatile String[] pageIds = new String[0];
+
+	/**
+	 * Makes sure the ids of pages at indexes up to the given size are precomputed.
+	 */
+	private static void ensurePageIds(int size) {
+		if(pageIds.length < size) {
+			synchronized(PageIndex.class) {
+				String[] oldPageIds = pageIds;
+				int oldSize = oldPageIds.length;
+				if(oldSize < size) {
+					String[] newPageIds = Arrays.copyOf(oldPageIds, size);
+					for(int i = oldSize; i < size; i++) {
+						newPageIds[i] = "page" + (i + 1);
+					}
+					pageIds = newPageIds;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the id of the page at the given index, "page#".
+	 */
+	public static String getPageId(int index) {
+		String[] ids = pageIds;
+		if(index < ids.length) return ids[index];
+		return "page" + (index + 1);
 	}
 
 	/**
@@ -95,30 +377,27 @@ public class PageIndex {
 	 * @see  #appendIdInPage(java.lang.Integer, java.lang.String, java.lang.Appendable) 
 	 */
 	public static String getRefId(Integer index, String id) throws IOException {
-		if(index != null) {
-			String indexPlusOne = Integer.toString(index + 1);
-			StringBuilder out = new StringBuilder(
-				4 // "page"
-				+ indexPlusOne.length()
-				+ (
-					id==null || id.isEmpty()
-					? 0
-					: (
-						1 // '-'
-						+ id.length()
-					)
-				)
-			);
-			out.append("page");
-			out.append(indexPlusOne);
-			if(id != null && !id.isEmpty()) {
-				out.append('-');
-				out.append(id);
-			}
-			return out.toString();
-		} else {
-			return id;
-		}
+		return index == null ? id : getRefId(index.intValue(), id);
+	}
+
+	/**
+	 * Gets an id for use in referencing the page at the given index.
+	 * If the index is not {@code -1}, as in a combined view, will be "page#-id".
+	 * Otherwise, the id is unchanged.
+	 *
+	 * @param  id  optional, id not added when null or empty
+	 *
+	 * @see  #indexOf(com.semanticcms.core.model.PageRef)
+	 */
+	public static String getRefId(int index, String id) {
+		if(index == -1) return id;
+		String pageId = getPageId(index);
+		if(id == null || id.isEmpty()) return pageId;
+		return new StringBuilder(pageId.length() + 1 + id.length())
+			.append(pageId)
+			.append('-')
+			.append(id)
+			.toString();
 	}
 
 	/**
@@ -135,16 +414,7 @@ public class PageIndex {
 	) throws ServletException {
 		// No page index
 		if(pageIndex == null) return id;
-		Integer index = pageIndex.getPageIndex(PageRefResolver.getCurrentPageRef(servletContext, request));
-		// Page not in index
-		if(index == null) return id;
-		if(id == null || id.isEmpty()) {
-			// Page in index
-			return "page" + (index + 1);
-		} else {
-			// Page in index with id
-			return "page" + (index + 1) + '-' + id;
-		}
+		return getRefId(pageIndex.indexOf(PageRefResolver.getCurrentPageRef(servletContext, request)), id);
 	}
 
 	/**
@@ -181,16 +451,7 @@ public class PageIndex {
 	) {
 		// No page index
 		if(pageIndex == null) return id;
-		Integer index = pageIndex.getPageIndex(page.getPageRef());
-		// Page not in index
-		if(index == null) return id;
-		if(id == null || id.isEmpty()) {
-			// Page in index
-			return "page" + (index + 1);
-		} else {
-			// Page in index with id
-			return "page" + (index + 1) + '-' + id;
-		}
+		return getRefId(pageIndex.indexOf(page.getPageRef()), id);
 	}
 
 	/**
@@ -218,9 +479,20 @@ public class PageIndex {
 	 */
 	// TODO: Encoder variants
 	public static void appendIdInPage(Integer index, String id, Appendable out) throws IOException {
-		if(index != null) {
-			out.append("page");
-			out.append(Integer.toString(index + 1));
+		appendIdInPage(index == null ? -1 : index, id, out);
+	}
+
+	/**
+	 * Appends an id for use in referencing the page at the given index.
+	 * If the index is not {@code -1}, as in a combined view, will be "page#-id".
+	 * Otherwise, the id is unchanged.
+	 *
+	 * @param  id  optional, id not added when null or empty
+	 */
+	// TODO: Encoder variants
+	public static void appendIdInPage(int index, String id, Appendable out) throws IOException {
+		if(index != -1) {
+			out.append(getPageId(index));
 			if(id != null && !id.isEmpty()) out.append('-');
 		}
 		if(id != null && !id.isEmpty()) out.append(id);
@@ -236,7 +508,7 @@ public class PageIndex {
 	public static void appendIdInPage(PageIndex pageIndex, Page page, String id, Appendable out) throws IOException {
 		if(pageIndex != null && page != null) {
 			appendIdInPage(
-				pageIndex.getPageIndex(page.getPageRef()),
+				pageIndex.indexOf(page.getPageRef()),
 				id,
 				out
 			);
@@ -247,29 +519,82 @@ public class PageIndex {
 
 	private final Page rootPage;
 	private final List<Page> pageList;
-	private final Map<PageRef, Integer> pageIndexes;
 
-	private PageIndex(
-		ServletContext servletContext,
-		HttpServletRequest request,
-		HttpServletResponse response,
-		Page rootPage
-	) throws ServletException, IOException {
+	/**
+	 * The pages, by index.
+	 */
+	private final PageRef[] pageRefs;
+
+	/**
+	 * Open-addressing hash table of page indexes, plus one, with {@code 0} for empty slots.
+	 * Sized to a power of two at least twice the number of pages.
+	 */
+	private final int[] slots;
+
+	private volatile Map<PageRef, Integer> pageIndexes;
+
+	/**
+	 * The range of pages rendered, inclusive start and exclusive end.
+	 */
+	private final int rangeStart;
+	private final int rangeEnd;
+
+	/**
+	 * The name of the combined view, used to link to other ranges, or {@code null} when not a range.
+	 */
+	private final String viewName;
+
+	/**
+	 * @param  pageList  the captured pages or {@code null} when pages are not retained
+	 */
+	private PageIndex(Page rootPage, List<Page> pageList, PageRef[] pageRefs) {
 		this.rootPage = rootPage;
-		this.pageList = PageDags.convertPageDagToList(
-			servletContext,
-			request,
-			response,
-			rootPage,
-			CaptureLevel.PAGE
-		);
-		int size = pageList.size();
+		this.pageList = pageList;
+		this.pageRefs = pageRefs;
+		int size = pageRefs.length;
+		this.rangeStart = 0;
+		this.rangeEnd = size;
+		this.viewName = null;
 		// Index pages
-		Map<PageRef, Integer> newPageIndexes = AoCollections.newHashMap(size);
+		slots = new int[Integer.highestOneBit(Math.max(size, 1)) << 2];
+		int mask = slots.length - 1;
 		for(int i=0; i<size; i++) {
-			newPageIndexes.put(pageList.get(i).getPageRef(), i);
+			PageRef pageRef = pageRefs[i];
+			int slot = spread(pageRef.hashCode()) & mask;
+			while(true) {
+				int existing = slots[slot];
+				if(existing == 0) {
+					slots[slot] = i + 1;
+					break;
+				}
+				// The DAG list has no duplicates, but keep the first index if there were
+				if(pageRefs[existing - 1].equals(pageRef)) break;
+				slot = (slot + 1) & mask;
+			}
 		}
-		this.pageIndexes = Collections.unmodifiableMap(newPageIndexes);
+		ensurePageIds(size);
+	}
+
+	/**
+	 * Creates a range of an existing index, sharing its pages.
+	 */
+	private PageIndex(PageIndex pageIndex, int rangeStart, int rangeEnd, String viewName) {
+		this.rootPage = pageIndex.rootPage;
+		this.pageList = pageIndex.pageList;
+		this.pageRefs = pageIndex.pageRefs;
+		this.slots = pageIndex.slots;
+		this.pageIndexes = pageIndex.pageIndexes;
+		this.rangeStart = rangeStart;
+		this.rangeEnd = rangeEnd;
+		this.viewName = viewName;
+	}
+
+	/**
+	 * Spreads the bits of a hash code for better distribution in the power-of-two table.
+	 */
+	private static int spread(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
 	}
 
 	/**
@@ -279,17 +604,219 @@ public class PageIndex {
 		return rootPage;
 	}
 
+	/**
+	 * Are the captured pages retained by this index?
+	 *
+	 * @see  #getStreamingPageIndex(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.PageRef)
+	 */
+	public boolean isRetainingPages() {
+		return pageList != null;
+	}
+
+	/**
+	 * Gets all pages, captured at {@link CaptureLevel#PAGE}.
+	 *
+	 * @throws  IllegalStateException  when the pages are not {@linkplain #isRetainingPages() retained}
+	 */
 	@SuppressWarnings("ReturnOfCollectionOrArrayField") // Returning unmodifiable
-	public List<Page> getPageList() {
+	public List<Page> getPageList() throws IllegalStateException {
+		if(pageList == null) throw new IllegalStateException("Pages not retained by streaming page index");
 		return pageList;
 	}
 
-	@SuppressWarnings("ReturnOfCollectionOrArrayField") // Returning unmodifiable
+	/**
+	 * Handles one page of {@link #forEachPage(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.pages.CaptureLevel, com.semanticcms.core.renderer.html.PageIndex.PageHandler)}.
+	 */
+	@FunctionalInterface
+	public static interface PageHandler {
+		void handlePage(int index, Page page) throws ServletException, IOException, SkipPageException;
+	}
+
+	/**
+	 * Captures and handles each page in the {@linkplain #getRangeStart() range}, in index order, flushing the response after each page.
+	 * No reference is kept to each page once handled, so the pages of a {@linkplain #getStreamingPageIndex(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.PageRef) streaming index}
+	 * are never all held in memory at once.
+	 * <p>
+	 * Any buffered writer used by the handler should be flushed by the handler.
+	 * </p>
+	 */
+	public void forEachPage(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		CaptureLevel captureLevel,
+		PageHandler handler
+	) throws ServletException, IOException, SkipPageException {
+		for(int i = rangeStart; i < rangeEnd; i++) {
+			Page page;
+			if(pageList != null && captureLevel == CaptureLevel.PAGE) {
+				page = pageList.get(i);
+			} else {
+				page = CapturePage.capturePage(servletContext, request, response, pageRefs[i], captureLevel);
+			}
+			handler.handlePage(i, page);
+			response.flushBuffer();
+		}
+	}
+
+	/**
+	 * Gets the pages, in index order.
+	 */
+	List<PageRef> getPageRefs() {
+		return Collections.unmodifiableList(Arrays.asList(pageRefs));
+	}
+
+	/**
+	 * Gets the page indexes as a map.
+	 *
+	 * @see  #indexOf(com.semanticcms.core.model.PageRef)
+	 */
 	public Map<PageRef, Integer> getPageIndexes() {
-		return pageIndexes;
+		Map<PageRef, Integer> map = pageIndexes;
+		if(map == null) {
+			int size = pageRefs.length;
+			Map<PageRef, Integer> newPageIndexes = AoCollections.newHashMap(size);
+			for(int i=0; i<size; i++) {
+				newPageIndexes.putIfAbsent(pageRefs[i], i);
+			}
+			map = Collections.unmodifiableMap(newPageIndexes);
+			pageIndexes = map;
+		}
+		return map;
 	}
-	
+
+	/**
+	 * Gets the index of the given page.
+	 *
+	 * @return  the index or {@code -1} when the page is not in this index
+	 */
+	public int indexOf(PageRef pageRef) {
+		int mask = slots.length - 1;
+		int slot = spread(pageRef.hashCode()) & mask;
+		while(true) {
+			int index = slots[slot];
+			if(index == 0) return -1;
+			if(pageRefs[index - 1].equals(pageRef)) return index - 1;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Gets the index of the given page.
+	 *
+	 * @return  the index or {@code null} when the page is not in this index
+	 *
+	 * @see  #indexOf(com.semanticcms.core.model.PageRef)
+	 */
 	public Integer getPageIndex(PageRef pagePath) {
-		return pageIndexes.get(pagePath);
+		int index = indexOf(pagePath);
+		return index == -1 ? null : index;
+	}
+
+	/**
+	 * Selects the range of pages requested by the {@link #PAGES_PARAM} parameter.
+	 *
+	 * @return  the range or this index when all pages are requested
+	 *
+	 * @throws  ServletException  when the parameter is invalid
+	 */
+	public PageIndex getRange(HttpServletRequest request) throws ServletException {
+		String pages = request.getParameter(PAGES_PARAM);
+		if(pages == null) return this;
+		int hyphen = pages.indexOf('-');
+		int first, last;
+		try {
+			if(hyphen == -1) {
+				first = last = Integer.parseInt(pages);
+			} else {
+				first = Integer.parseInt(pages.substring(0, hyphen));
+				last = Integer.parseInt(pages.substring(hyphen + 1));
+			}
+		} catch(NumberFormatException e) {
+			throw new ServletException(PAGES_PARAM + " parameter is not a page range: " + pages, e);
+		}
+		if(first < 1 || last < first || last > pageRefs.length) {
+			throw new ServletException(PAGES_PARAM + " parameter is out of range 1-" + pageRefs.length + ": " + pages);
+		}
+		return getRange(first - 1, last, request.getParameter(HtmlRenderer.VIEW_PARAM));
+	}
+
+	/**
+	 * Selects a range of pages.  Links to pages outside the range are to the range of the same
+	 * size containing the target page.
+	 *
+	 * @param  rangeStart  the index of the first page, inclusive
+	 * @param  rangeEnd    the index after the last page, exclusive
+	 * @param  viewName    the name of the combined view, used to link to other ranges
+	 *
+	 * @see  #getRangeHref(int, java.lang.String)
+	 */
+	public PageIndex getRange(int rangeStart, int rangeEnd, String viewName) {
+		if(rangeStart < 0 || rangeEnd < rangeStart || rangeEnd > pageRefs.length) {
+			throw new IndexOutOfBoundsException("rangeStart=" + rangeStart + ", rangeEnd=" + rangeEnd + ", size=" + pageRefs.length);
+		}
+		if(rangeStart == 0 && rangeEnd == pageRefs.length) return this;
+		return new PageIndex(this, rangeStart, rangeEnd, viewName);
+	}
+
+	/**
+	 * Gets the index of the first page rendered, inclusive.
+	 */
+	public int getRangeStart() {
+		return rangeStart;
+	}
+
+	/**
+	 * Gets the index after the last page rendered, exclusive.
+	 */
+	public int getRangeEnd() {
+		return rangeEnd;
+	}
+
+	/**
+	 * Checks if the page at the given index is rendered in this range.
+	 */
+	public boolean isInRange(int index) {
+		return index >= rangeStart && index < rangeEnd;
+	}
+
+	/**
+	 * Gets the href to a page or target within a page in the range of pages containing the
+	 * given index, not including any context path.  The range is of the same size as this
+	 * range and aligned to a multiple of that size.
+	 *
+	 * @param  id  optional, id not added when null
+	 */
+	// TODO: Support multi-domain
+	public String getRangeHref(int index, String id) {
+		int size = rangeEnd - rangeStart;
+		int start = size == 0 ? index : (index / size * size);
+		int end = Math.min(start + Math.max(size, 1), pageRefs.length);
+		PageRef rootPageRef = rootPage.getPageRef();
+		String prefix = rootPageRef.getBookRef().getPrefix();
+		String path = rootPageRef.getPath().toString();
+		String pageId = getPageId(index);
+		StringBuilder href = new StringBuilder(
+			prefix.length()
+			+ path.length()
+			+ (viewName == null ? 0 : (6 + viewName.length())) // "?view="
+			+ 28 // "&pages=" and digits
+			+ pageId.length()
+			+ (id == null ? 0 : (1 + id.length()))
+		);
+		href.append(prefix).append(path);
+		char separator = (prefix.indexOf('?') != -1 || path.indexOf('?') != -1) ? '&' : '?';
+		if(viewName != null) {
+			href.append(separator).append(HtmlRenderer.VIEW_PARAM).append('=');
+			URIEncoder.encodeURIComponent(viewName, href);
+			separator = '&';
+		}
+		href.append(separator).append(PAGES_PARAM).append('=').append(start + 1).append('-').append(end);
+		href.append('#').append(pageId);
+		if(id != null) {
+			href.append('-');
+			URIEncoder.encodeURIComponent(id, href);
+		}
+		return href.toString();
 	}
 }
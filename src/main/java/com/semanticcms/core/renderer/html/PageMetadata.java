@@ -0,0 +1,196 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import com.aoapps.collections.AoCollections;
+import com.semanticcms.core.model.Element;
+import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.pages.CaptureLevel;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * The small subset of a captured {@link Page} needed to render links to it,
+ * kept separately from the page so links may be rendered without capturing their targets.
+ *
+ * @see  HtmlRenderer#getPageMetadata(javax.servlet.http.HttpServletRequest, com.semanticcms.core.model.PageRef)
+ */
+public final class PageMetadata {
+
+	/**
+	 * The subset of an {@link Element} needed to render links to it.
+	 */
+	public static final class ElementMetadata {
+
+		private final String id;
+		private final String text;
+		private final boolean hidden;
+		private final boolean generated;
+		private final String linkCssClass;
+
+		private ElementMetadata(HtmlRenderer htmlRenderer, Element element, boolean generated) {
+			this.id = element.getId();
+			this.text = element.toString();
+			this.hidden = element.isHidden();
+			this.generated = generated;
+			this.linkCssClass = htmlRenderer.getLinkCssClass(element);
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		/**
+		 * Gets the text used for the element in links.
+		 */
+		public String getText() {
+			return text;
+		}
+
+		public boolean isHidden() {
+			return hidden;
+		}
+
+		/**
+		 * Is the id of this element generated?
+		 */
+		public boolean isGenerated() {
+			return generated;
+		}
+
+		/**
+		 * @see  HtmlRenderer#getLinkCssClass(com.semanticcms.core.model.Element)
+		 */
+		public String getLinkCssClass() {
+			return linkCssClass;
+		}
+	}
+
+	private final PageRef pageRef;
+	private final CaptureLevel captureLevel;
+	private final String title;
+	private final String shortTitle;
+	private final Map<String, ElementMetadata> elementsById;
+
+	/**
+	 * The results of {@link View#getAllowRobots(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)},
+	 * by view name, as they are determined.
+	 */
+	private final ConcurrentMap<String, Boolean> allowRobotsByView = new ConcurrentHashMap<>();
+
+	/**
+	 * @param  captureLevel  the level the page was captured at.  Elements are only indexed at {@link CaptureLevel#META} or higher.
+	 */
+	PageMetadata(HtmlRenderer htmlRenderer, Page page, CaptureLevel captureLevel) {
+		this.pageRef = page.getPageRef();
+		this.captureLevel = captureLevel;
+		this.title = page.getTitle();
+		this.shortTitle = page.getShortTitle();
+		if(captureLevel.compareTo(CaptureLevel.META) >= 0) {
+			Map<String, Element> pageElementsById = page.getElementsById();
+			Set<String> generatedIds = page.getGeneratedIds();
+			Map<String, ElementMetadata> newElementsById = AoCollections.newHashMap(pageElementsById.size());
+			for(Map.Entry<String, Element> entry : pageElementsById.entrySet()) {
+				String id = entry.getKey();
+				newElementsById.put(
+					id,
+					new ElementMetadata(htmlRenderer, entry.getValue(), generatedIds.contains(id))
+				);
+			}
+			this.elementsById = AoCollections.optimalUnmodifiableMap(newElementsById);
+		} else {
+			this.elementsById = Collections.emptyMap();
+		}
+	}
+
+	public PageRef getPageRef() {
+		return pageRef;
+	}
+
+	/**
+	 * Gets the level the page was captured at when indexed.
+	 */
+	public CaptureLevel getCaptureLevel() {
+		return captureLevel;
+	}
+
+	/**
+	 * Checks if the elements of the page have been indexed.
+	 */
+	public boolean hasElements() {
+		return captureLevel.compareTo(CaptureLevel.META) >= 0;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getShortTitle() {
+		return shortTitle;
+	}
+
+	/**
+	 * Gets the elements by id, empty when the page was not captured at {@link CaptureLevel#META} or higher.
+	 *
+	 * @see  #hasElements()
+	 */
+	@SuppressWarnings("ReturnOfCollectionOrArrayField") // Returning unmodifiable
+	public Map<String, ElementMetadata> getElementsById() {
+		return elementsById;
+	}
+
+	/**
+	 * Gets the previously determined result of {@link View#getAllowRobots(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)}.
+	 *
+	 * @return  the result or {@code null} when not yet determined for the given view
+	 */
+	public Boolean getAllowRobots(View view) {
+		return allowRobotsByView.get(view.getName());
+	}
+
+	/**
+	 * Determines {@link View#getAllowRobots(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)}
+	 * on the given page, remembering the result.
+	 */
+	boolean getAllowRobots(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		View view,
+		Page page
+	) throws ServletException, IOException {
+		assert page.getPageRef().equals(pageRef);
+		boolean allowRobots = view.getAllowRobots(servletContext, request, response, page);
+		allowRobotsByView.put(view.getName(), allowRobots);
+		return allowRobots;
+	}
+}
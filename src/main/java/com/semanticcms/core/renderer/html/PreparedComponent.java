@@ -0,0 +1,113 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2016, 2017, 2019, 2020, 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import com.aoapps.html.servlet.DocumentEE;
+import com.semanticcms.core.model.Page;
+import java.io.IOException;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A component that computes its data before the page is written, then only writes in the position callbacks.
+ * <p>
+ * Once the view and theme are resolved, the renderer prepares all applicable prepared components concurrently,
+ * so the time spent on expensive, independent lookups approaches that of the slowest component instead of the
+ * sum of all of them.
+ * </p>
+ *
+ * @param  <D>  the type of data computed by {@link #prepare(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.renderer.html.View, com.semanticcms.core.model.Page)}
+ */
+public interface PreparedComponent<D> extends Component {
+
+	/**
+	 * <p>
+	 * Computes the data used to render this component.
+	 * </p>
+	 * <p>
+	 * This may be called on a different thread than the one rendering the page, concurrently with other components.
+	 * The request must only be read, request attributes must not be set, and nothing may be written to the response.
+	 * </p>
+	 * <p>
+	 * When the component was not prepared in advance, such as during error handling, this is called on the rendering
+	 * thread when the component is first rendered.
+	 * </p>
+	 *
+	 * @param view  The view that is currently being rendered.  May be {@code null} during error handling.
+	 * @param page  The page that is currently being rendered.  May be {@code null} during error handling.
+	 *
+	 * @return  the data, which may be {@code null}
+	 */
+	D prepare(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		View view,
+		Page page
+	) throws ServletException, IOException;
+
+	/**
+	 * Renders a component in the output stream from its prepared data.
+	 *
+	 * @param data  the result of {@link #prepare(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.renderer.html.View, com.semanticcms.core.model.Page)}
+	 *
+	 * @see  Component#doComponent(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.aoapps.html.servlet.DocumentEE, com.semanticcms.core.renderer.html.View, com.semanticcms.core.model.Page, com.semanticcms.core.renderer.html.ComponentPosition)
+	 */
+	void doComponent(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		DocumentEE document,
+		View view,
+		Page page,
+		ComponentPosition position,
+		D data
+	) throws ServletException, IOException;
+
+	/**
+	 * Renders from the prepared data, preparing now when not prepared in advance.
+	 */
+	@Override
+	default void doComponent(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		DocumentEE document,
+		View view,
+		Page page,
+		ComponentPosition position
+	) throws ServletException, IOException {
+		doComponent(
+			servletContext,
+			request,
+			response,
+			document,
+			view,
+			page,
+			position,
+			ComponentPreparation.getData(servletContext, request, response, this, view, page)
+		);
+	}
+}
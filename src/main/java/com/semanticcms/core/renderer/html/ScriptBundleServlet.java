@@ -0,0 +1,63 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the content-hashed {@linkplain HtmlRenderer#getBundledScripts() script bundles}.
+ * Since the name of a bundle changes whenever its content changes, bundles are cached by
+ * browsers without ever being revalidated.
+ */
+@WebServlet(ScriptBundles.BUNDLE_PATH_PREFIX + "*")
+public class ScriptBundleServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * One year, the longest recommended max-age.
+	 */
+	private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		String pathInfo = request.getPathInfo();
+		byte[] bundle = (pathInfo == null || pathInfo.length() < 2)
+			? null
+			: HtmlRenderer.getInstance(getServletContext()).getScriptBundle(pathInfo.substring(1));
+		if(bundle == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+		} else {
+			response.setContentType("application/javascript");
+			response.setCharacterEncoding("UTF-8");
+			response.setHeader("Cache-Control", CACHE_CONTROL);
+			response.setContentLength(bundle.length);
+			response.getOutputStream().write(bundle);
+		}
+	}
+}
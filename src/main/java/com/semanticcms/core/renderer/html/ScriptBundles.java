@@ -0,0 +1,217 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import com.aoapps.collections.AoCollections;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.ServletContext;
+
+/**
+ * Concatenates the {@linkplain HtmlRenderer#getScripts() registered scripts} into content-hashed bundles.
+ * Each run of consecutive scripts that are resources of this application becomes a single bundle,
+ * which keeps the scripts in their registered order relative to any external scripts.
+ * Scripts that begin with a directive prologue, such as {@code "use strict"}, are not bundled,
+ * since the directive would either apply to the whole bundle or be lost.
+ * <p>
+ * Bundles are named by the hash of their content, so they never change and are served with
+ * immutable caching by {@link ScriptBundleServlet}.
+ * </p>
+ *
+ * @see  HtmlRenderer#getBundledScripts()
+ */
+final class ScriptBundles {
+
+	/**
+	 * The path bundles are served from.
+	 */
+	static final String BUNDLE_PATH_PREFIX = "/semanticcms-core-renderer-html/bundles/";
+
+	/**
+	 * The file extension of bundles.
+	 */
+	static final String BUNDLE_EXTENSION = ".js";
+
+	/**
+	 * The number of hexadecimal digits of the hash used in bundle names.
+	 */
+	private static final int HASH_DIGITS = 20;
+
+	/**
+	 * Separates scripts within a bundle, ending any statement not terminated by the previous script.
+	 */
+	private static final byte[] SEPARATOR = "\n;\n".getBytes(StandardCharsets.UTF_8);
+
+	private final int resourcesVersion;
+	private final Map<String, String> bundledScripts;
+	private final Map<String, byte[]> bundlesByName;
+
+	/**
+	 * @param  resourcesVersion  the {@linkplain HtmlRenderer#getResourcesVersion() resources version} the scripts are from
+	 */
+	ScriptBundles(ServletContext servletContext, int resourcesVersion, Map<String, String> scripts) throws IOException {
+		this.resourcesVersion = resourcesVersion;
+		Map<String, String> newBundledScripts = new LinkedHashMap<>();
+		Map<String, byte[]> newBundlesByName = new HashMap<>();
+		// The current run of consecutive local scripts
+		List<Map.Entry<String, String>> run = new ArrayList<>();
+		List<byte[]> runContents = new ArrayList<>();
+		for(Map.Entry<String, String> entry : scripts.entrySet()) {
+			byte[] content = getContent(servletContext, entry.getValue());
+			if(content != null && !hasDirectivePrologue(content)) {
+				run.add(entry);
+				runContents.add(content);
+			} else {
+				endRun(run, runContents, newBundledScripts, newBundlesByName);
+				newBundledScripts.put(entry.getKey(), entry.getValue());
+			}
+		}
+		endRun(run, runContents, newBundledScripts, newBundlesByName);
+		this.bundledScripts = AoCollections.optimalUnmodifiableMap(newBundledScripts);
+		this.bundlesByName = newBundlesByName;
+	}
+
+	/**
+	 * Gets the content of a script that is a resource of this application.
+	 *
+	 * @return  the content or {@code null} when not a local resource, such as an external script or one generated by a servlet
+	 */
+	private static byte[] getContent(ServletContext servletContext, String src) throws IOException {
+		if(!src.startsWith("/") || src.startsWith("//") || src.indexOf('?') != -1 || src.indexOf('#') != -1) return null;
+		try (InputStream in = servletContext.getResourceAsStream(src)) {
+			if(in == null) return null;
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buff = new byte[4096];
+			int count;
+			while((count = in.read(buff)) != -1) out.write(buff, 0, count);
+			return out.toByteArray();
+		}
+	}
+
+	/**
+	 * Checks if a script may begin with a directive prologue, such as {@code "use strict"}.
+	 * Any string literal before the first statement is considered a directive, which errs on the side of not bundling.
+	 */
+	private static boolean hasDirectivePrologue(byte[] content) {
+		int len = content.length;
+		int pos = 0;
+		// Skip any UTF-8 byte order mark
+		if(len >= 3 && content[0] == (byte)0xEF && content[1] == (byte)0xBB && content[2] == (byte)0xBF) pos = 3;
+		while(pos < len) {
+			byte b = content[pos];
+			if(b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0B) {
+				pos++;
+			} else if(b == '/' && pos + 1 < len && content[pos + 1] == '/') {
+				// Line comment
+				pos += 2;
+				while(pos < len && content[pos] != '\n' && content[pos] != '\r') pos++;
+			} else if(b == '/' && pos + 1 < len && content[pos + 1] == '*') {
+				// Block comment
+				pos += 2;
+				while(pos < len && !(content[pos] == '*' && pos + 1 < len && content[pos + 1] == '/')) pos++;
+				pos += 2;
+			} else {
+				return b == '"' || b == '\'';
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Bundles a run of scripts.  A single script is left as-is, since it is already a single request.
+	 */
+	private static void endRun(
+		List<Map.Entry<String, String>> run,
+		List<byte[]> runContents,
+		Map<String, String> bundledScripts,
+		Map<String, byte[]> bundlesByName
+	) {
+		int size = run.size();
+		if(size == 1) {
+			Map.Entry<String, String> entry = run.get(0);
+			bundledScripts.put(entry.getKey(), entry.getValue());
+		} else if(size > 1) {
+			ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+			for(int i = 0; i < size; i++) {
+				if(i > 0) bundle.write(SEPARATOR, 0, SEPARATOR.length);
+				byte[] content = runContents.get(i);
+				bundle.write(content, 0, content.length);
+			}
+			byte[] bytes = bundle.toByteArray();
+			String name = hash(bytes) + BUNDLE_EXTENSION;
+			bundlesByName.put(name, bytes);
+			bundledScripts.put(ScriptBundles.class.getName() + ':' + name, BUNDLE_PATH_PREFIX + name);
+		}
+		run.clear();
+		runContents.clear();
+	}
+
+	/**
+	 * Gets the leading hexadecimal digits of the SHA-256 hash of the given bytes.
+	 */
+	private static String hash(byte[] bytes) {
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+		} catch(NoSuchAlgorithmException e) {
+			throw new AssertionError("SHA-256 is required to be supported", e);
+		}
+		char[] hex = new char[HASH_DIGITS];
+		for(int i = 0; i < HASH_DIGITS; i++) {
+			int b = digest[i >> 1];
+			hex[i] = Character.forDigit(((i & 1) == 0 ? (b >> 4) : b) & 0xF, 16);
+		}
+		return new String(hex);
+	}
+
+	int getResourcesVersion() {
+		return resourcesVersion;
+	}
+
+	/**
+	 * @see  HtmlRenderer#getBundledScripts()
+	 */
+	@SuppressWarnings("ReturnOfCollectionOrArrayField") // Returning unmodifiable
+	Map<String, String> getBundledScripts() {
+		return bundledScripts;
+	}
+
+	/**
+	 * Gets the content of a bundle by name.
+	 *
+	 * @return  the content or {@code null} when not a current bundle
+	 */
+	byte[] getBundle(String name) {
+		return bundlesByName.get(name);
+	}
+}
@@ -26,9 +26,14 @@ import com.aoapps.encoding.Doctype;
 import com.aoapps.encoding.Serialization;
 import com.aoapps.encoding.servlet.DoctypeEE;
 import com.aoapps.encoding.servlet.SerializationEE;
+import com.aoapps.html.any.AnyDocument;
+import com.aoapps.html.servlet.DocumentEE;
 import com.aoapps.web.resources.registry.Registry;
 import com.semanticcms.core.model.Page;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
@@ -114,6 +119,117 @@ abstract public class Theme {
 		// Do nothing
 	}
 
+	/**
+	 * Are the resources {@linkplain #configureResources(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.renderer.html.View, com.semanticcms.core.model.Page, com.aoapps.web.resources.registry.Registry) configured}
+	 * by this theme the same for every request and page?  When static, resources are only configured once
+	 * per view and the result is reused.
+	 * <p>
+	 * <b>Implementation Note:</b><br>
+	 * returns {@code false} by default
+	 * </p>
+	 */
+	public boolean isResourcesStatic() {
+		return false;
+	}
+
+	/**
+	 * Writes a segment of theme output that is the same for every page, such as the doctype,
+	 * head boilerplate, scripts, and footer chrome.
+	 */
+	@FunctionalInterface
+	public static interface StaticSegment {
+		void doSegment(DocumentEE document) throws ServletException, IOException;
+	}
+
+	/**
+	 * Key for static segments, which depend on the serialization and doctype in effect.
+	 */
+	private static final class SegmentKey {
+
+		private final String name;
+		private final Serialization serialization;
+		private final Doctype doctype;
+		private final int version;
+
+		private SegmentKey(String name, Serialization serialization, Doctype doctype, int version) {
+			this.name = name;
+			this.serialization = serialization;
+			this.doctype = doctype;
+			this.version = version;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof SegmentKey)) return false;
+			SegmentKey other = (SegmentKey)obj;
+			return
+				name.equals(other.name)
+				&& serialization == other.serialization
+				&& doctype == other.doctype
+				&& version == other.version;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((name.hashCode() * 31 + serialization.hashCode()) * 31 + doctype.hashCode()) * 31 + version;
+		}
+	}
+
+	/**
+	 * The encoded static segments of this theme.
+	 */
+	private final ConcurrentMap<SegmentKey, String> staticSegments = new ConcurrentHashMap<>();
+
+	/**
+	 * The most recent {@linkplain HtmlRenderer#getResourcesVersion() resources version} seen, used to remove the
+	 * segments of older versions.  Segments are keyed by version, so this is only for cleanup.
+	 */
+	private volatile int staticSegmentsVersion;
+
+	/**
+	 * Writes a segment of output that is the same for every page.  The segment is generated once per
+	 * {@link Serialization}, {@link Doctype}, and {@linkplain HtmlRenderer#getResourcesVersion() resources version},
+	 * then written directly on each request without going through the fluent API.
+	 * Segments are not shared when response encoding changes any of their URLs, such as adding the session id.
+	 * <p>
+	 * The segment is generated in a new document, at no indentation depth, and may use
+	 * {@link DocumentEE#unsafe(java.lang.Object)} to open elements that are closed by a later segment.
+	 * </p>
+	 *
+	 * @param  name  the name of the segment, unique within this theme
+	 */
+	protected void doStaticSegment(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		AnyDocument<?> document,
+		String name,
+		StaticSegment segment
+	) throws ServletException, IOException {
+		int version = HtmlRenderer.getInstance(servletContext).getResourcesVersion();
+		if(version != staticSegmentsVersion) {
+			staticSegmentsVersion = version;
+			staticSegments.keySet().removeIf(k -> k.version != version);
+		}
+		SegmentKey key = new SegmentKey(
+			name,
+			SerializationEE.get(servletContext, request),
+			DoctypeEE.get(servletContext, request),
+			version
+		);
+		boolean shareable = URLEncodingTracker.isShareable(request);
+		String html = shareable ? staticSegments.get(key) : null;
+		if(html == null) {
+			StringWriter out = new StringWriter();
+			URLEncodingTracker tracker = new URLEncodingTracker(response);
+			segment.doSegment(new DocumentEE(servletContext, request, tracker, out));
+			html = out.toString();
+			// Output with response-encoded URLs, such as containing the session id, is specific to this request
+			if(shareable && !tracker.isChanged()) staticSegments.put(key, html);
+		}
+		document.unsafe(html);
+	}
+
 	/**
 	 * Renders the theme.
 	 * <p>
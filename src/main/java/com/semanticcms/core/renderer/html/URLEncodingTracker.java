@@ -0,0 +1,87 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Tracks whether response URL encoding has changed any URL, such as by adding a session id.
+ * Output written with such URLs is specific to the session and must not be shared between requests.
+ */
+final class URLEncodingTracker extends HttpServletResponseWrapper {
+
+	/**
+	 * Checks if output written in the current request could be shared between requests.
+	 * This is not the case when the session id is being sent in URLs, nor while exporting, where the
+	 * {@link Exporter} rewrites URLs to the exported files and records the resources they reference.
+	 */
+	static boolean isShareable(HttpServletRequest request) {
+		return
+			!request.isRequestedSessionIdFromURL()
+			&& !Headers.isExporting(request);
+	}
+
+	private volatile boolean changed;
+
+	URLEncodingTracker(HttpServletResponse response) {
+		super(response);
+	}
+
+	/**
+	 * Checks if URL encoding has changed any URL.
+	 */
+	boolean isChanged() {
+		return changed;
+	}
+
+	private String track(String url, String encoded) {
+		if(!changed && encoded != null && !encoded.equals(url)) changed = true;
+		return encoded;
+	}
+
+	@Override
+	public String encodeURL(String url) {
+		return track(url, super.encodeURL(url));
+	}
+
+	@Override
+	public String encodeRedirectURL(String url) {
+		return track(url, super.encodeRedirectURL(url));
+	}
+
+	@Deprecated
+	@Override
+	@SuppressWarnings("deprecation")
+	public String encodeUrl(String url) {
+		return track(url, super.encodeUrl(url));
+	}
+
+	@Deprecated
+	@Override
+	@SuppressWarnings("deprecation")
+	public String encodeRedirectUrl(String url) {
+		return track(url, super.encodeRedirectUrl(url));
+	}
+}
@@ -39,11 +39,13 @@ import com.semanticcms.core.model.Page;
 import com.semanticcms.core.model.PageRef;
 import com.semanticcms.core.pages.CaptureLevel;
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -145,6 +147,20 @@ abstract public class View implements Comparable<View> {
 		return Link.DEFAULT_VIEW_NAME.equals(getName());
 	}
 
+	/**
+	 * Does this view render the content of the page, including its links?
+	 * When {@code false}, the targets of links on the page are not captured in advance.
+	 * <p>
+	 * <b>Implementation Note:</b><br>
+	 * returns {@code true} for the {@linkplain #isDefault() default view} only
+	 * </p>
+	 *
+	 * @see  LinkRenderer#prefetchLinks(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.PageRef)
+	 */
+	public boolean isPageContentRendered() {
+		return isDefault();
+	}
+
 	/**
 	 * Checks if a view applies in global navigation context.
 	 * <p>
@@ -158,8 +174,8 @@ abstract public class View implements Comparable<View> {
 
 	/**
 	 * Checks if a view is applicable the given request and page.
-	 * For correct determination, the page must have been captured at {@link CaptureLevel#META}
-	 * level or higher.
+	 * For correct determination, the page must have been captured at the {@linkplain #getApplicableCaptureLevel() applicable capture level}
+	 * or higher, which is {@link CaptureLevel#META} by default.
 	 * <p>
 	 * TODO: Store the captureLevel in effect when a page is captured, and confirm that here and other places where
 	 *       certain capture levels are required for correct behavior.  Could also automatically re-capture at a higher level
@@ -179,6 +195,61 @@ abstract public class View implements Comparable<View> {
 		return true;
 	}
 
+	/**
+	 * Gets the level pages must be captured at for {@link #isApplicable(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)}.
+	 * <p>
+	 * <b>Implementation Note:</b><br>
+	 * returns {@link CaptureLevel#META} by default
+	 * </p>
+	 *
+	 * @return  the capture level or {@code null} when applicability does not depend on the content of the page
+	 */
+	public CaptureLevel getApplicableCaptureLevel() {
+		return CaptureLevel.META;
+	}
+
+	/**
+	 * Checks if a view is applicable to each of the given pages.
+	 * Views may override this to check many pages more efficiently than one at a time.
+	 * <p>
+	 * <b>Implementation Note:</b><br>
+	 * calls {@link #isApplicable(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)}
+	 * for each page by default
+	 * </p>
+	 *
+	 * @return  the bit at each index is set when applicable to the page at the same index
+	 *
+	 * @see  HtmlRenderer#getApplicable(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.renderer.html.View, java.util.List)
+	 */
+	public BitSet isApplicable(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		HttpServletResponse response,
+		List<? extends Page> pages
+	) throws ServletException, IOException {
+		int size = pages.size();
+		BitSet applicable = new BitSet(size);
+		for(int i = 0; i < size; i++) {
+			if(isApplicable(servletContext, request, response, pages.get(i))) applicable.set(i);
+		}
+		return applicable;
+	}
+
+	/**
+	 * Can the results of {@link #isApplicable(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)}
+	 * be shared between requests?  This is only the case when applicability depends on nothing but the
+	 * page itself, and not on the request or other pages such as its children.
+	 * <p>
+	 * <b>Implementation Note:</b><br>
+	 * returns {@code false} by default
+	 * </p>
+	 *
+	 * @see  HtmlRenderer#getApplicable(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.renderer.html.View, java.util.List)
+	 */
+	public boolean isApplicableCacheable() {
+		return false;
+	}
+
 	/**
 	 * Gets an id to use for the main navigation link to this view.
 	 * <p>
@@ -244,14 +315,30 @@ abstract public class View implements Comparable<View> {
 		String encodedBookPrefix = URIEncoder.encodeURI(bookRef.getPrefix());
 		String encodedServletPath;
 		{
-			StringBuilder servletPath = new StringBuilder();
-			servletPath.append(encodedBookPrefix);
-			URIEncoder.encodeURI(pageRef.getPath().toString(), servletPath);
-			if(!isDefault()) {
-				servletPath.append("?view=");
-				URIEncoder.encodeURIComponent(getName(), servletPath);
+			HtmlRenderer htmlRenderer = HtmlRenderer.getInstance(servletContext);
+			long cacheMaxAge = htmlRenderer.getCacheMaxAge(request);
+			HtmlRenderer.ViewPageKey cacheKey = (cacheMaxAge > 0) ? new HtmlRenderer.ViewPageKey(getName(), pageRef) : null;
+			String servletPath = (cacheKey == null) ? null : htmlRenderer.canonicalServletPathCache.get(cacheKey, cacheMaxAge);
+			if(servletPath == null) {
+				StringBuilder sb = new StringBuilder();
+				sb.append(encodedBookPrefix);
+				URIEncoder.encodeURI(pageRef.getPath().toString(), sb);
+				if(!isDefault()) {
+					sb.append("?view=");
+					URIEncoder.encodeURIComponent(getName(), sb);
+				}
+				servletPath = sb.toString();
+				if(cacheKey != null) {
+					htmlRenderer.canonicalServletPathCache.put(
+						cacheKey,
+						servletPath,
+						cacheMaxAge,
+						Collections.singleton(pageRef)
+					);
+				}
 			}
-			encodedServletPath = Canonical.encodeCanonicalURL(response, servletPath.toString());
+			// Response encoding may vary by request, so is always performed
+			encodedServletPath = Canonical.encodeCanonicalURL(response, servletPath);
 		}
 		// To be safe, we're encoding the servletPath, then picking it back into a bookPath
 		// TODO: How would this interact with things like PrettyUrlFilter?
@@ -264,16 +351,47 @@ abstract public class View implements Comparable<View> {
 				encodedBookPath = encodedServletPath.substring(encodedBookPrefix.length());
 			}
 		}
-		return BookUtils.getCanonicalBase(
-			servletContext,
-			request,
-			SemanticCMS.getInstance(servletContext).getBook(bookRef)
-		) + encodedBookPath;
+		return getCanonicalBase(servletContext, request, bookRef) + encodedBookPath;
+	}
+
+	/**
+	 * The request attribute holding the canonical base of each book, which may depend on the request.
+	 */
+	private static final String CANONICAL_BASES_REQUEST_ATTRIBUTE = View.class.getName() + ".canonicalBases";
+
+	/**
+	 * Gets the canonical base of the given book, once per request.
+	 *
+	 * @see  BookUtils#getCanonicalBase(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, com.semanticcms.core.controller.Book)
+	 */
+	private static String getCanonicalBase(
+		ServletContext servletContext,
+		HttpServletRequest request,
+		BookRef bookRef
+	) throws ServletException, IOException {
+		@SuppressWarnings("unchecked")
+		Map<BookRef, String> canonicalBases = (Map<BookRef, String>)request.getAttribute(CANONICAL_BASES_REQUEST_ATTRIBUTE);
+		if(canonicalBases == null) {
+			// Concurrent since may be shared by concurrent subrequests
+			canonicalBases = new ConcurrentHashMap<>();
+			request.setAttribute(CANONICAL_BASES_REQUEST_ATTRIBUTE, canonicalBases);
+		}
+		String canonicalBase = canonicalBases.get(bookRef);
+		if(canonicalBase == null) {
+			canonicalBase = BookUtils.getCanonicalBase(
+				servletContext,
+				request,
+				SemanticCMS.getInstance(servletContext).getBook(bookRef)
+			);
+			canonicalBases.put(bookRef, canonicalBase);
+		}
+		return canonicalBase;
 	}
 
 	/**
 	 * Gets the effective last modified time, if known, for the given page in this view.
-	 * This is used for things such as sitemaps.
+	 * This is used for things such as sitemaps and conditional requests, which should
+	 * read it through the index of {@link HtmlRenderer#getLastModified(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.renderer.html.View, com.semanticcms.core.model.Page)}.
 	 * <p>
 	 * <b>Implementation Note:</b><br>
 	 * This default implementation returns {@code null} indicating not applicable to this view.
@@ -293,6 +411,7 @@ abstract public class View implements Comparable<View> {
 	/**
 	 * Gets the copyright information for the view on the given page.
 	 * 
+	 * @see  HtmlRenderer#findCopyright(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)
 	 * @see  CopyrightUtils#findCopyright(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)
 	 */
 	public Copyright getCopyright(
@@ -301,12 +420,13 @@ abstract public class View implements Comparable<View> {
 		HttpServletResponse response,
 		Page page
 	) throws ServletException, IOException {
-		return CopyrightUtils.findCopyright(servletContext, request, response, page);
+		return HtmlRenderer.getInstance(servletContext).findCopyright(request, response, page);
 	}
 
 	/**
 	 * Gets the author(s) for the view on the given page.
 	 *
+	 * @see  HtmlRenderer#findAuthors(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)
 	 * @see  AuthorUtils#findAuthors(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page)
 	 */
 	public Set<Author> getAuthors(
@@ -315,7 +435,7 @@ abstract public class View implements Comparable<View> {
 		HttpServletResponse response,
 		Page page
 	) throws ServletException, IOException {
-		return AuthorUtils.findAuthors(servletContext, request, response, page);
+		return HtmlRenderer.getInstance(servletContext).findAuthors(request, response, page);
 	}
 
 	/**
@@ -358,6 +478,19 @@ abstract public class View implements Comparable<View> {
 		// Do nothing
 	}
 
+	/**
+	 * Are the resources {@linkplain #configureResources(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.renderer.html.Theme, com.semanticcms.core.model.Page, com.aoapps.web.resources.registry.Registry) configured}
+	 * by this view the same for every request and page?  When static, resources are only configured once
+	 * per theme and the result is reused.
+	 * <p>
+	 * <b>Implementation Note:</b><br>
+	 * returns {@code false} by default
+	 * </p>
+	 */
+	public boolean isResourcesStatic() {
+		return false;
+	}
+
 	/**
 	 * Gets an optional set of additional links to include for this view
 	 * in the order they should be added.
@@ -407,6 +540,8 @@ abstract public class View implements Comparable<View> {
 	 * Renders the view.  This is called by the template to fill-out the main content area.
 	 *
 	 * TODO: Is SkipPageException acceptable at the view rendering stage?
+	 *
+	 * @see  FragmentCache#doFragment(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.aoapps.html.servlet.FlowContent, java.lang.String, java.util.Collection, java.util.Map, com.semanticcms.core.renderer.html.FragmentCache.FragmentBody)
 	 */
 	abstract public <__ extends FlowContent<__>> void doView(
 		ServletContext servletContext,
@@ -0,0 +1,149 @@
+/*
+ * semanticcms-core-renderer-html - SemanticCMS pages rendered as HTML in a Servlet environment.
+ * Copyright (C) 2021  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-core-renderer-html.
+ *
+ * semanticcms-core-renderer-html is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-core-renderer-html is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-core-renderer-html.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.semanticcms.core.renderer.html;
+
+import com.aoapps.lang.validation.ValidationException;
+import com.aoapps.net.DomainName;
+import com.aoapps.net.Path;
+import com.semanticcms.core.model.BookRef;
+import com.semanticcms.core.model.PageRef;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import javax.servlet.ServletException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+
+/**
+ * Compares the order of pages in a {@link PageIndex}, captured one DAG level at a time, with the order
+ * of the recursive depth-first traversal that captures each page as it is reached.
+ */
+public class PageIndexTest {
+
+	private static final int ITERATIONS = 1000;
+
+	private static final int MAX_PAGES = 50;
+
+	private static final BookRef bookRef;
+	static {
+		try {
+			bookRef = new BookRef(DomainName.valueOf("semanticcms.com"), Path.valueOf("/test"));
+		} catch(ValidationException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static PageRef getPageRef(int page) throws ValidationException {
+		return new PageRef(bookRef, Path.valueOf("/page-" + page));
+	}
+
+	/**
+	 * Creates a random DAG, where each page may only have children with a higher number.
+	 * Pages commonly share children, and children are listed in random order.
+	 */
+	private static Map<PageRef, List<PageRef>> newRandomDag(Random random, PageRef[] pageRefs) {
+		Map<PageRef, List<PageRef>> dag = new HashMap<>();
+		for(int i = 0; i < pageRefs.length; i++) {
+			List<PageRef> children = new ArrayList<>();
+			for(int j = i + 1; j < pageRefs.length; j++) {
+				if(random.nextInt(4) == 0) children.add(pageRefs[j]);
+			}
+			Collections.shuffle(children, random);
+			dag.put(pageRefs[i], children);
+		}
+		return dag;
+	}
+
+	/**
+	 * The recursive traversal, skipping pages already visited and inaccessible pages.
+	 */
+	private static void addPagesRecursive(
+		Map<PageRef, List<PageRef>> dag,
+		Set<PageRef> inaccessible,
+		PageRef pageRef,
+		Set<PageRef> visited,
+		List<PageRef> pageRefs
+	) {
+		if(visited.add(pageRef)) {
+			pageRefs.add(pageRef);
+			for(PageRef childPageRef : dag.get(pageRef)) {
+				if(
+					!visited.contains(childPageRef)
+					&& !inaccessible.contains(childPageRef)
+				) {
+					addPagesRecursive(dag, inaccessible, childPageRef, visited, pageRefs);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testAddPagesMatchesRecursiveOrder() throws ValidationException, ServletException, IOException {
+		Random random = new Random(0);
+		for(int iteration = 0; iteration < ITERATIONS; iteration++) {
+			PageRef[] pageRefs = new PageRef[1 + random.nextInt(MAX_PAGES)];
+			for(int i = 0; i < pageRefs.length; i++) {
+				pageRefs[i] = getPageRef(i);
+			}
+			Map<PageRef, List<PageRef>> dag = newRandomDag(random, pageRefs);
+			// The root is always accessible
+			Set<PageRef> inaccessible = new HashSet<>();
+			for(int i = 1; i < pageRefs.length; i++) {
+				if(random.nextInt(10) == 0) inaccessible.add(pageRefs[i]);
+			}
+			PageRef rootPageRef = pageRefs[0];
+			Set<PageRef> lookedUp = new HashSet<>();
+
+			List<PageRef> expected = new ArrayList<>();
+			addPagesRecursive(dag, inaccessible, rootPageRef, new HashSet<>(), expected);
+
+			Map<PageRef, List<PageRef>> childPageRefs = PageIndex.discoverByLevel(
+				rootPageRef,
+				level -> {
+					Map<PageRef, List<PageRef>> levelChildPageRefs = new HashMap<>();
+					for(PageRef pageRef : level) {
+						assertFalse("looked-up twice: " + pageRef, lookedUp.contains(pageRef));
+						lookedUp.add(pageRef);
+						List<PageRef> children = new ArrayList<>();
+						for(PageRef childPageRef : dag.get(pageRef)) {
+							if(!inaccessible.contains(childPageRef)) children.add(childPageRef);
+						}
+						levelChildPageRefs.put(pageRef, children);
+					}
+					return levelChildPageRefs;
+				}
+			);
+			List<PageRef> actual = new ArrayList<>();
+			PageIndex.addPages(childPageRefs, rootPageRef, new HashSet<>(), actual);
+
+			assertEquals("iteration " + iteration, expected, actual);
+		}
+	}
+}